@@ -1,15 +1,22 @@
 package org.sqlite;
 
 import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.sun.jna.Callback;
 import com.sun.jna.FromNativeContext;
 import com.sun.jna.FromNativeConverter;
+import com.sun.jna.Function;
 import com.sun.jna.Library;
 import com.sun.jna.Memory;
 import com.sun.jna.Native;
+import com.sun.jna.NativeLibrary;
 import com.sun.jna.NativeMapped;
 import com.sun.jna.Pointer;
 import com.sun.jna.ToNativeContext;
@@ -58,6 +65,21 @@ public class SQLite
   public final static int SQLITE_ROW        = 100; // sqlite3_step() has another row ready
   public final static int SQLITE_DONE       = 101; // sqlite3_step() has finished executing
 
+  // Flags for open_v2
+  public final static int SQLITE_OPEN_READONLY     = 0x00000001;
+  public final static int SQLITE_OPEN_READWRITE    = 0x00000002;
+  public final static int SQLITE_OPEN_CREATE       = 0x00000004;
+  public final static int SQLITE_OPEN_URI          = 0x00000040;
+  public final static int SQLITE_OPEN_MEMORY       = 0x00000080;
+  public final static int SQLITE_OPEN_NOMUTEX      = 0x00008000;
+  public final static int SQLITE_OPEN_FULLMUTEX    = 0x00010000;
+  public final static int SQLITE_OPEN_SHAREDCACHE  = 0x00020000;
+  public final static int SQLITE_OPEN_PRIVATECACHE = 0x00040000;
+
+  // Special destructor values for the bind_* functions
+  public final static Pointer SQLITE_STATIC    = null;                       // value outlives the binding
+  public final static Pointer SQLITE_TRANSIENT = Pointer.createConstant(-1); // SQLite copies the value before returning
+
   public interface SQLiteAPI extends Library
   {
     public int sqlite3_libversion_number();
@@ -88,20 +110,26 @@ public class SQLite
 
     public int sqlite3_bind_parameter_count(Pointer sqlite3_stmt);
 
+    public int sqlite3_clear_bindings(Pointer sqlite3_stmt);
+
     public int sqlite3_bind_null(Pointer sqlite3_stmt, int index);
 
     public int sqlite3_bind_int(Pointer sqlite3_stmt, int index, int value);
 
     public int sqlite3_bind_int64(Pointer sqlite3_stmt, int index, long value);
 
-    //int sqlite3_bind_double(Pointer sqlite3_stmt, int index, double value);
-    // Last parameter in the next 3 functions is useless in Java because of GC.
+    public int sqlite3_bind_double(Pointer sqlite3_stmt, int index, double value);
+
+    // The String is converted into a temporary buffer which the GC may free: pass SQLITE_TRANSIENT as destructor.
     public int sqlite3_bind_text(Pointer sqlite3_stmt, int index, String value, int length, Pointer dummy);
 
+    public int sqlite3_bind_text(Pointer sqlite3_stmt, int index, Pointer value, int length, Pointer destructor);
+
     //int sqlite3_bind_text16(Pointer sqlite3_stmt, int index, const void*, int, void(*)(void*));
-    //int sqlite3_bind_blob(Pointer sqlite3_stmt, int index, const void*, int n, void(*)(void*));
+    public int sqlite3_bind_blob(Pointer sqlite3_stmt, int index, Pointer value, int n, Pointer destructor);
+
     //int sqlite3_bind_value(Pointer sqlite3_stmt index, int, const sqlite3_value*);
-    //int vbind_zeroblob(Pointer sqlite3_stmt index, int, int n);
+    public int sqlite3_bind_zeroblob(Pointer sqlite3_stmt, int index, int n);
 
     public int sqlite3_complete(String zSql);
 
@@ -111,6 +139,8 @@ public class SQLite
 
     public int sqlite3_prepare_v2(Pointer sqlite3, String zSql, int nByte, PointerByReference ppStmt, PointerByReference pzTail);
 
+    public int sqlite3_prepare_v2(Pointer sqlite3, Pointer zSql, int nByte, PointerByReference ppStmt, PointerByReference pzTail);
+
     public int sqlite3_prepare16(Pointer sqlite3, String16 zSql, int nByte, PointerByReference ppStmt, PointerByReference pzTail);
 
     public int sqlite3_prepare16_v2(Pointer sqlite3, String16 zSql, int nByte, PointerByReference ppStmt, PointerByReference pzTail);
@@ -149,6 +179,28 @@ public class SQLite
 
     public String16 sqlite3_column_table_name16(Pointer sqlite3_stmt, int iCol);
 
+    public String sqlite3_column_database_name(Pointer sqlite3_stmt, int iCol);
+
+    public String sqlite3_column_origin_name(Pointer sqlite3_stmt, int iCol);
+
+    public int sqlite3_blob_open(Pointer sqlite3, String zDb, String zTable, String zColumn, long iRow, int flags, PointerByReference ppBlob);
+
+    public int sqlite3_blob_close(Pointer sqlite3_blob);
+
+    public int sqlite3_blob_bytes(Pointer sqlite3_blob);
+
+    public int sqlite3_blob_read(Pointer sqlite3_blob, Pointer z, int n, int iOffset);
+
+    public int sqlite3_blob_write(Pointer sqlite3_blob, Pointer z, int n, int iOffset);
+
+    public int sqlite3_busy_timeout(Pointer sqlite3, int ms);
+
+    public int sqlite3_busy_handler(Pointer sqlite3, BusyCallback callback, Pointer data);
+
+    public void sqlite3_interrupt(Pointer sqlite3);
+
+    public void sqlite3_progress_handler(Pointer sqlite3, int nOps, ProgressCallback callback, Pointer data);
+
     public String16 sqlite3_value_text16(Pointer sqlite3_value);
 
     public String16LE sqlite3_value_text16le(Pointer sqlite3_value);
@@ -162,15 +214,114 @@ public class SQLite
     void callback(Pointer data, int columnCount, String[] values, String[] names);
   }
 
+  /**
+   * Called when a lock can't be taken, see sqlite3_busy_handler. Returns non-zero to retry, 0 to fail with SQLITE_BUSY.
+   */
+  public interface BusyCallback extends Callback
+  {
+    int callback(Pointer data, int count);
+  }
+
+  /**
+   * Called every few virtual machine instructions, see sqlite3_progress_handler. Returns non-zero to interrupt the
+   * statement, which then fails with SQLITE_INTERRUPT.
+   */
+  public interface ProgressCallback extends Callback
+  {
+    int callback(Pointer data);
+  }
+
   interface ParameterDestroyer extends Callback
   {
     void destroy();
   }
 
+  /**
+   * Direct-mapped entry points for the functions called once per row or once per column. JNA binds these as real JNI
+   * natives, which avoids the reflective dispatch and argument boxing of the {@link SQLiteAPI} proxy. Only functions
+   * with primitive and {@link Pointer} signatures are mapped here; everything else goes through the proxy.
+   */
+  private static final class DirectAPI
+  {
+    static {
+      Native.register(DirectAPI.class, NativeLibrary.getInstance(LIBRARY_NAME));
+    }
+
+    static native int sqlite3_libversion_number();
+
+    static native int sqlite3_close(Pointer sqlite3);
+
+    static native int sqlite3_errcode(Pointer sqlite3);
+
+    static native int sqlite3_get_autocommit(Pointer sqlite3);
+
+    static native int sqlite3_changes(Pointer sqlite3);
+
+    static native long sqlite3_last_insert_rowid(Pointer sqlite3);
+
+    static native int sqlite3_bind_parameter_count(Pointer sqlite3_stmt);
+
+    static native int sqlite3_clear_bindings(Pointer sqlite3_stmt);
+
+    static native int sqlite3_bind_null(Pointer sqlite3_stmt, int index);
+
+    static native int sqlite3_bind_int(Pointer sqlite3_stmt, int index, int value);
+
+    static native int sqlite3_bind_int64(Pointer sqlite3_stmt, int index, long value);
+
+    static native int sqlite3_bind_double(Pointer sqlite3_stmt, int index, double value);
+
+    static native int sqlite3_bind_text(Pointer sqlite3_stmt, int index, Pointer value, int length, Pointer destructor);
+
+    static native int sqlite3_bind_blob(Pointer sqlite3_stmt, int index, Pointer value, int n, Pointer destructor);
+
+    static native int sqlite3_bind_zeroblob(Pointer sqlite3_stmt, int index, int n);
+
+    static native int sqlite3_reset(Pointer sqlite3_stmt);
+
+    static native int sqlite3_step(Pointer sqlite3_stmt);
+
+    static native int sqlite3_finalize(Pointer sqlite3_stmt);
+
+    static native int sqlite3_column_count(Pointer sqlite3_stmt);
+
+    static native int sqlite3_column_type(Pointer sqlite3_stmt, int iCol);
+
+    static native int sqlite3_column_int(Pointer sqlite3_stmt, int iCol);
+
+    static native long sqlite3_column_int64(Pointer sqlite3_stmt, int iCol);
+
+    static native double sqlite3_column_double(Pointer sqlite3_stmt, int iCol);
+
+    static native Pointer sqlite3_column_blob(Pointer sqlite3_stmt, int iCol);
+
+    static native Pointer sqlite3_column_text(Pointer sqlite3_stmt, int iCol);
+
+    static native int sqlite3_column_bytes(Pointer sqlite3_stmt, int iCol);
+
+    static native int sqlite3_column_bytes16(Pointer sqlite3_stmt, int iCol);
+  }
+
+  /**
+   * System property which disables direct mapping when set to <code>false</code>. All calls then go through the
+   * {@link SQLiteAPI} proxy.
+   */
+  public static final String           PROP_DIRECT_MAPPING = "org.sqlite.jna.direct";
+
+  /**
+   * System property which counts the calls into the library when set to <code>true</code>, see
+   * {@link #getNativeCalls()}. Only the proxy can be counted, so it also disables direct mapping. Meant for benchmarks.
+   */
+  public static final String           PROP_COUNT_CALLS    = "org.sqlite.jna.count";
+
   private static final String          LIBRARY_NAME    = "sqlite3";
   private static SQLiteAPI             api;
+  private static boolean               direct;
+  private static Function              columnTextFunction;
   private static Map<String, Object>   options         = new HashMap<String, Object>();
   private static SQLiteStringConverter stringConverter = new SQLiteStringConverter();
+  // null unless PROP_COUNT_CALLS is set
+  private static AtomicLong            nativeCalls;
 
   static {
 
@@ -190,6 +341,57 @@ public class SQLite
     });
 
     api = (SQLiteAPI) Native.loadLibrary(LIBRARY_NAME, SQLiteAPI.class, options);
+    if (Boolean.getBoolean(PROP_COUNT_CALLS)) {
+      nativeCalls = new AtomicLong();
+      api = counting(api);
+    }
+    direct = nativeCalls == null && registerDirectAPI();
+    columnTextFunction = NativeLibrary.getInstance(LIBRARY_NAME).getFunction("sqlite3_column_text");
+  }
+
+  private static boolean registerDirectAPI()
+  {
+    if (!Boolean.valueOf(System.getProperty(PROP_DIRECT_MAPPING, "true"))) return false;
+    try {
+      Class.forName(DirectAPI.class.getName(), true, SQLite.class.getClassLoader());
+      return true;
+    } catch (Throwable e) {
+      // Old JNA without direct mapping or a library missing some symbols: stay on the proxy.
+      return false;
+    }
+  }
+
+  private static SQLiteAPI counting(final SQLiteAPI target)
+  {
+    return (SQLiteAPI) Proxy.newProxyInstance(SQLiteAPI.class.getClassLoader(), new Class<?>[] { SQLiteAPI.class },
+        new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+          {
+            nativeCalls.incrementAndGet();
+            try {
+              return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+              throw e.getCause();
+            }
+          }
+        });
+  }
+
+  /**
+   * @return the number of calls into the library so far, -1 unless counted, see {@link #PROP_COUNT_CALLS}
+   */
+  static public long getNativeCalls()
+  {
+    return nativeCalls != null ? nativeCalls.get() : -1;
+  }
+
+  /**
+   * @return <code>true</code> if the hot-path functions are bound through direct mapping, <code>false</code> if every
+   *         call goes through the interface proxy
+   */
+  static public boolean isDirectMapped()
+  {
+    return direct;
   }
 
   static class SQLiteStringConverter implements FromNativeConverter, ToNativeConverter
@@ -350,24 +552,46 @@ public class SQLite
 
   }
 
+  /**
+   * Binds <code>n</code> bytes of native memory as a BLOB. Pass {@link #SQLITE_TRANSIENT} unless the memory is
+   * guaranteed to outlive the binding.
+   */
+  static public int bind_blob(Pointer sqlite3_stmt, int index, Pointer value, int n, Pointer destructor)
+  {
+    return direct ? DirectAPI.sqlite3_bind_blob(sqlite3_stmt, index, value, n, destructor) : api.sqlite3_bind_blob(sqlite3_stmt, index, value, n, destructor);
+  }
+
+  static public int bind_double(Pointer sqlite3_stmt, int index, double value)
+  {
+    return direct ? DirectAPI.sqlite3_bind_double(sqlite3_stmt, index, value) : api.sqlite3_bind_double(sqlite3_stmt, index, value);
+  }
+
   static public int bind_int(Pointer sqlite3_stmt, int index, int value)
   {
-    return api.sqlite3_bind_int(sqlite3_stmt, index, value);
+    return direct ? DirectAPI.sqlite3_bind_int(sqlite3_stmt, index, value) : api.sqlite3_bind_int(sqlite3_stmt, index, value);
   }
 
   static public int bind_int64(Pointer sqlite3_stmt, int index, long value)
   {
-    return api.sqlite3_bind_int64(sqlite3_stmt, index, value);
+    return direct ? DirectAPI.sqlite3_bind_int64(sqlite3_stmt, index, value) : api.sqlite3_bind_int64(sqlite3_stmt, index, value);
   }
 
   static public int bind_null(Pointer sqlite3_stmt, int index)
   {
-    return api.sqlite3_bind_null(sqlite3_stmt, index);
+    return direct ? DirectAPI.sqlite3_bind_null(sqlite3_stmt, index) : api.sqlite3_bind_null(sqlite3_stmt, index);
+  }
+
+  /**
+   * Binds a BLOB of <code>n</code> zero bytes without passing them, to be filled in later through a BLOB handle.
+   */
+  static public int bind_zeroblob(Pointer sqlite3_stmt, int index, int n)
+  {
+    return direct ? DirectAPI.sqlite3_bind_zeroblob(sqlite3_stmt, index, n) : api.sqlite3_bind_zeroblob(sqlite3_stmt, index, n);
   }
 
   static public int bind_parameter_count(Pointer sqlite3_stmt)
   {
-    return api.sqlite3_bind_parameter_count(sqlite3_stmt);
+    return direct ? DirectAPI.sqlite3_bind_parameter_count(sqlite3_stmt) : api.sqlite3_bind_parameter_count(sqlite3_stmt);
   }
 
   static public int bind_text(Pointer sqlite3_stmt, int index, String value, int length, Pointer dummy)
@@ -375,54 +599,112 @@ public class SQLite
     return api.sqlite3_bind_text(sqlite3_stmt, index, value, length, dummy);
   }
 
+  /**
+   * Binds <code>length</code> bytes of UTF-8 text already in native memory. Pass {@link #SQLITE_TRANSIENT} unless the
+   * memory is guaranteed to outlive the binding.
+   */
+  static public int bind_text(Pointer sqlite3_stmt, int index, Pointer value, int length, Pointer destructor)
+  {
+    return direct ? DirectAPI.sqlite3_bind_text(sqlite3_stmt, index, value, length, destructor) : api.sqlite3_bind_text(sqlite3_stmt, index, value, length, destructor);
+  }
+
+  static public int blob_bytes(Pointer sqlite3_blob)
+  {
+    return api.sqlite3_blob_bytes(sqlite3_blob);
+  }
+
+  static public int blob_close(Pointer sqlite3_blob)
+  {
+    return api.sqlite3_blob_close(sqlite3_blob);
+  }
+
+  /**
+   * Opens an incremental BLOB handle on one column of one row. <code>flags</code> is 0 for read-only, 1 for read-write.
+   */
+  static public int blob_open(Pointer sqlite3, String zDb, String zTable, String zColumn, long iRow, int flags, PointerByReference ppBlob)
+  {
+    return api.sqlite3_blob_open(sqlite3, zDb, zTable, zColumn, iRow, flags, ppBlob);
+  }
+
+  static public int blob_read(Pointer sqlite3_blob, Pointer z, int n, int iOffset)
+  {
+    return api.sqlite3_blob_read(sqlite3_blob, z, n, iOffset);
+  }
+
+  static public int blob_write(Pointer sqlite3_blob, Pointer z, int n, int iOffset)
+  {
+    return api.sqlite3_blob_write(sqlite3_blob, z, n, iOffset);
+  }
+
+  /**
+   * Installs a busy handler, replacing any busy timeout. <code>null</code> removes it.
+   */
+  static public int busy_handler(Pointer sqlite3, BusyCallback callback, Pointer data)
+  {
+    return api.sqlite3_busy_handler(sqlite3, callback, data);
+  }
+
+  /**
+   * Sleeps up to <code>ms</code> milliseconds in total while a table is locked, replacing any busy handler.
+   */
+  static public int busy_timeout(Pointer sqlite3, int ms)
+  {
+    return api.sqlite3_busy_timeout(sqlite3, ms);
+  }
+
+  static public int clear_bindings(Pointer sqlite3_stmt)
+  {
+    return direct ? DirectAPI.sqlite3_clear_bindings(sqlite3_stmt) : api.sqlite3_clear_bindings(sqlite3_stmt);
+  }
+
   static public int changes(Pointer sqlite3)
   {
-    return api.sqlite3_changes(sqlite3);
+    return direct ? DirectAPI.sqlite3_changes(sqlite3) : api.sqlite3_changes(sqlite3);
   }
 
   static public long last_insert_rowid(Pointer sqlite3)
   {
-    return api.sqlite3_last_insert_rowid(sqlite3);
+    return direct ? DirectAPI.sqlite3_last_insert_rowid(sqlite3) : api.sqlite3_last_insert_rowid(sqlite3);
   }
   
   static public int close(Pointer sqlite3)
   {
-    return api.sqlite3_close(sqlite3);
+    return direct ? DirectAPI.sqlite3_close(sqlite3) : api.sqlite3_close(sqlite3);
   }
 
   static public Pointer column_blob(Pointer sqlite3_stmt, int iCol)
   {
-    return api.sqlite3_column_blob(sqlite3_stmt, iCol);
+    return direct ? DirectAPI.sqlite3_column_blob(sqlite3_stmt, iCol) : api.sqlite3_column_blob(sqlite3_stmt, iCol);
   }
 
   static public int column_bytes(Pointer sqlite3_stmt, int iCol)
   {
-    return api.sqlite3_column_bytes(sqlite3_stmt, iCol);
+    return direct ? DirectAPI.sqlite3_column_bytes(sqlite3_stmt, iCol) : api.sqlite3_column_bytes(sqlite3_stmt, iCol);
   }
 
   static public int column_bytes16(Pointer sqlite3_stmt, int iCol)
   {
-    return api.sqlite3_column_bytes16(sqlite3_stmt, iCol);
+    return direct ? DirectAPI.sqlite3_column_bytes16(sqlite3_stmt, iCol) : api.sqlite3_column_bytes16(sqlite3_stmt, iCol);
   }
 
   static public int column_count(Pointer sqlite3_stmt)
   {
-    return api.sqlite3_column_count(sqlite3_stmt);
+    return direct ? DirectAPI.sqlite3_column_count(sqlite3_stmt) : api.sqlite3_column_count(sqlite3_stmt);
   }
 
   static public double column_double(Pointer sqlite3_stmt, int iCol)
   {
-    return api.sqlite3_column_double(sqlite3_stmt, iCol);
+    return direct ? DirectAPI.sqlite3_column_double(sqlite3_stmt, iCol) : api.sqlite3_column_double(sqlite3_stmt, iCol);
   }
 
   static public int column_int(Pointer sqlite3_stmt, int iCol)
   {
-    return api.sqlite3_column_int(sqlite3_stmt, iCol);
+    return direct ? DirectAPI.sqlite3_column_int(sqlite3_stmt, iCol) : api.sqlite3_column_int(sqlite3_stmt, iCol);
   }
 
   static public long column_int64(Pointer sqlite3_stmt, int iCol)
   {
-    return api.sqlite3_column_int64(sqlite3_stmt, iCol);
+    return direct ? DirectAPI.sqlite3_column_int64(sqlite3_stmt, iCol) : api.sqlite3_column_int64(sqlite3_stmt, iCol);
   }
 
   static public String column_name(Pointer sqlite3_stmt, int N)
@@ -435,6 +717,16 @@ public class SQLite
     return api.sqlite3_column_name16(sqlite3_stmt, N);
   }
 
+  static public String column_database_name(Pointer sqlite3_stmt, int iCol)
+  {
+    return api.sqlite3_column_database_name(sqlite3_stmt, iCol);
+  }
+
+  static public String column_origin_name(Pointer sqlite3_stmt, int iCol)
+  {
+    return api.sqlite3_column_origin_name(sqlite3_stmt, iCol);
+  }
+
   static public String column_table_name(Pointer sqlite3_stmt, int iCol)
   {
     return api.sqlite3_column_table_name(sqlite3_stmt, iCol);
@@ -450,6 +742,18 @@ public class SQLite
     return api.sqlite3_column_text(sqlite3_stmt, iCol);
   }
 
+  /**
+   * Same as {@link #column_text(Pointer, int)} but returns the UTF-8 buffer owned by SQLite instead of a Java copy. The
+   * buffer stays valid until the next step, reset or finalize of the statement; its length is reported by a subsequent
+   * {@link #column_bytes(Pointer, int)} call.
+   */
+  static public Pointer column_text_pointer(Pointer sqlite3_stmt, int iCol)
+  {
+    if (direct) return DirectAPI.sqlite3_column_text(sqlite3_stmt, iCol);
+    if (nativeCalls != null) nativeCalls.incrementAndGet();
+    return columnTextFunction.invokePointer(new Object[] { sqlite3_stmt, iCol });
+  }
+
   static public String16 column_text16(Pointer sqlite3_stmt, int iCol)
   {
     return api.sqlite3_column_text16(sqlite3_stmt, iCol);
@@ -457,7 +761,7 @@ public class SQLite
 
   static public int column_type(Pointer sqlite3_stmt, int iCol)
   {
-    return api.sqlite3_column_type(sqlite3_stmt, iCol);
+    return direct ? DirectAPI.sqlite3_column_type(sqlite3_stmt, iCol) : api.sqlite3_column_type(sqlite3_stmt, iCol);
   }
 
   static public int complete(String zSql)
@@ -472,7 +776,7 @@ public class SQLite
 
   static public int errcode(Pointer sqlite3)
   {
-    return api.sqlite3_errcode(sqlite3);
+    return direct ? DirectAPI.sqlite3_errcode(sqlite3) : api.sqlite3_errcode(sqlite3);
   }
 
   static public String errmsg(Pointer sqlite3)
@@ -492,12 +796,21 @@ public class SQLite
 
   static public int finalize(Pointer sqlite3_stmt)
   {
-    return api.sqlite3_finalize(sqlite3_stmt);
+    return direct ? DirectAPI.sqlite3_finalize(sqlite3_stmt) : api.sqlite3_finalize(sqlite3_stmt);
   }
 
   static public int get_autocommit(Pointer sqlite3_stmt)
   {
-    return api.sqlite3_get_autocommit(sqlite3_stmt);
+    return direct ? DirectAPI.sqlite3_get_autocommit(sqlite3_stmt) : api.sqlite3_get_autocommit(sqlite3_stmt);
+  }
+
+  /**
+   * Makes the statements running on the connection fail with SQLITE_INTERRUPT. Safe to call from any thread while the
+   * connection is open.
+   */
+  static public void interrupt(Pointer sqlite3)
+  {
+    api.sqlite3_interrupt(sqlite3);
   }
 
   static public String libversion()
@@ -507,7 +820,7 @@ public class SQLite
 
   static public int libversion_number()
   {
-    return api.sqlite3_libversion_number();
+    return direct ? DirectAPI.sqlite3_libversion_number() : api.sqlite3_libversion_number();
   }
 
   static public int open(String filename, PointerByReference ppDb)
@@ -545,14 +858,28 @@ public class SQLite
     return api.sqlite3_prepare_v2(sqlite3, zSql, nByte, ppStmt, pzTail);
   }
 
+  /**
+   * Prepares from UTF-8 SQL already in native memory. Unlike the String version, <code>pzTail</code> then points into
+   * memory owned by the caller, so a script can be walked statement by statement without copying its tail.
+   */
+  static public int prepare_v2(Pointer sqlite3, Pointer zSql, int nByte, PointerByReference ppStmt, PointerByReference pzTail)
+  {
+    return api.sqlite3_prepare_v2(sqlite3, zSql, nByte, ppStmt, pzTail);
+  }
+
+  static public void progress_handler(Pointer sqlite3, int nOps, ProgressCallback callback, Pointer data)
+  {
+    api.sqlite3_progress_handler(sqlite3, nOps, callback, data);
+  }
+
   static public int reset(Pointer sqlite3_stmt)
   {
-    return api.sqlite3_reset(sqlite3_stmt);
+    return direct ? DirectAPI.sqlite3_reset(sqlite3_stmt) : api.sqlite3_reset(sqlite3_stmt);
   }
 
   static public int step(Pointer sqlite3_stmt)
   {
-    return api.sqlite3_step(sqlite3_stmt);
+    return direct ? DirectAPI.sqlite3_step(sqlite3_stmt) : api.sqlite3_step(sqlite3_stmt);
   }
 
   static public String16 value_text16(Pointer sqlite3_value)
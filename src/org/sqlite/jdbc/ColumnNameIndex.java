@@ -0,0 +1,75 @@
+package org.sqlite.jdbc;
+
+import java.util.Arrays;
+
+/**
+ * Case-insensitive lookup of column names that doesn't allocate. The names are hashed once into an open addressing
+ * table; a lookup folds the case of each char while hashing and compares with equalsIgnoreCase. The last names looked
+ * up are remembered by reference, so a literal used in a row loop is found with one comparison.
+ */
+class ColumnNameIndex
+{
+  private static final int RECENT_SIZE = 8;
+
+  private final String[] names;
+  private final int[] slots;
+  private final String[] recentNames;
+  private final int[] recentPositions;
+
+  /**
+   * @param pNames column names in result set order; if a name repeats, the first column wins
+   */
+  ColumnNameIndex(String[] pNames)
+  {
+    names = pNames;
+    int size = 4;
+    while (size < names.length * 2) size <<= 1;
+    slots = new int[size];
+    Arrays.fill(slots, -1);
+    for (int i = 0; i < names.length; i++) {
+      if (lookup(names[i]) >= 0) continue;
+      int slot = hash(names[i]) & (size - 1);
+      while (slots[slot] >= 0) slot = (slot + 1) & (size - 1);
+      slots[slot] = i;
+    }
+    recentNames = new String[RECENT_SIZE];
+    recentPositions = new int[RECENT_SIZE];
+  }
+
+  /**
+   * @return the position of the column, or -1 if there is none with that name
+   */
+  int find(String name)
+  {
+    // String caches its hash code, so a repeated literal costs a field read here
+    int r = name.hashCode() & (RECENT_SIZE - 1);
+    if (recentNames[r] == name) return recentPositions[r];
+    int result = lookup(name);
+    if (result >= 0) {
+      recentNames[r] = name;
+      recentPositions[r] = result;
+    }
+    return result;
+  }
+
+  private int lookup(String name)
+  {
+    int mask = slots.length - 1;
+    for (int slot = hash(name) & mask; slots[slot] >= 0; slot = (slot + 1) & mask) {
+      if (names[slots[slot]].equalsIgnoreCase(name)) return slots[slot];
+    }
+    return -1;
+  }
+
+  /**
+   * Hashes chars folded the way equalsIgnoreCase compares them.
+   */
+  private static int hash(String name)
+  {
+    int h = 0;
+    for (int i = 0; i < name.length(); i++) {
+      h = 31 * h + Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+    }
+    return h ^ (h >>> 16);
+  }
+}
@@ -3,15 +3,45 @@ package org.sqlite.jdbc;
 import java.sql.Connection;
 import java.sql.DriverPropertyInfo;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
 import java.util.Properties;
+import java.util.logging.Logger;
 
+import org.sqlite.SQLite;
+
+/**
+ * JDBC driver for URLs of the form <code>jdbc:sqlite:&lt;file name&gt;[?&lt;property&gt;=&lt;value&gt;[&amp;...]]</code>.
+ * Properties choosing the sqlite3_open_v2 flags:
+ * <ul>
+ * <li><code>mode=ro|rw|rwc|memory</code>: open read-only, read-write, read-write creating the file (the default), or as
+ * a database held in memory only. SQLite shares an in-memory database between connections only if it is named by a URI:
+ * <code>jdbc:sqlite:file:name?uri=true&amp;mode=memory&amp;cache=shared</code>. A read-only open requested by the
+ * caller, e.g. a read-only pool, stays read-only.</li>
+ * <li><code>cache=shared|private</code>: share the page cache with the other connections of the process to the same
+ * file, or not, whatever the library default is.</li>
+ * <li><code>threading=confined|serialized</code>: <code>confined</code> opens the connection with SQLITE_OPEN_NOMUTEX
+ * and skips the library's mutexes on every call. The application then guarantees that only one thread uses the
+ * connection, and the statements and result sets created from it, at any one time; handing it over to another thread
+ * through a pool or any other synchronization is fine, concurrent use corrupts memory. {@link Statement#cancel()} and
+ * query timeouts stay safe. <code>serialized</code> (SQLITE_OPEN_FULLMUTEX) makes concurrent use safe, one call at a
+ * time. Without the property the library default applies, serialized for the usual builds.</li>
+ * <li><code>uri=true</code>: the file name is an SQLite URI, e.g.
+ * <code>jdbc:sqlite:file:data.db?uri=true&amp;vfs=unix-dotfile</code>. The whole text after the prefix, query
+ * included, is passed to SQLite, which reads its own URI parameters and ignores the driver's ones.</li>
+ * </ul>
+ * The other properties, driver settings and pragmas, are listed in {@link SQLiteConfig}. Properties may also be given
+ * in the <code>Properties</code> of {@link #connect(String, Properties)}, the URL winning.
+ */
 public class Driver implements java.sql.Driver
 {
   private static final String URL_PREFIX      = "jdbc:sqlite:";
   private static final int    VERSION_MAJOR   = 0;
   private static final int    VERSION_MINOR   = 1;
 
-  private static final String PROP_AUTOCOMMIT = "autocommit";
+  // Backoff delays of busy_backoff, in milliseconds
+  static final long           BUSY_BACKOFF_INITIAL = 1;
+  static final long           BUSY_BACKOFF_MAX     = 100;
 
   static {
     try {
@@ -46,9 +76,15 @@ public class Driver implements java.sql.Driver
     return VERSION_MINOR;
   }
 
+  /**
+   * Reports every property of {@link SQLiteConfig}, with the value <code>url</code> and <code>info</code> give it.
+   */
   public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) throws SQLException
   {
-    return null;
+    if (!acceptsURL(url)) {
+      return new DriverPropertyInfo[0];
+    }
+    return config(url, info).getPropertyInfo();
   }
 
   public Connection connect(String url, Properties info) throws SQLException
@@ -56,19 +92,52 @@ public class Driver implements java.sql.Driver
     if (!acceptsURL(url)) {
       return null;
     }
+    return open(url, info, SQLite.SQLITE_OPEN_READWRITE | SQLite.SQLITE_OPEN_CREATE);
+  }
 
-    String[] urlParts = url.substring(URL_PREFIX.length()).split("\\?");
-    SQLiteConnection result = new SQLiteConnection(urlParts[0]);
-    if (urlParts.length > 1) {
-      String[] properties = urlParts[1].toLowerCase().split("&");
-      for (String p : properties) {
-        String[] pp = p.split("=");
-        if (PROP_AUTOCOMMIT.equals(pp[0]) && pp.length > 1) {
-          result.setAutoCommit(pp[1].equals("1") || pp[1].equals("true") || pp[1].equals("yes"));
-        }
-      }
+  /**
+   * Opens a connection for an accepted URL with explicit sqlite3_open_v2 flags.
+   */
+  static SQLiteConnection open(String url, Properties info, int openFlags) throws SQLException
+  {
+    return open(url, config(url, info), openFlags);
+  }
+
+  /**
+   * Opens a connection for an accepted URL with settings already merged with those of the URL, see
+   * {@link #config(String, Properties)}.
+   */
+  static SQLiteConnection open(String url, SQLiteConfig config, int openFlags) throws SQLException
+  {
+    String name = url.substring(URL_PREFIX.length());
+    int query = name.indexOf('?');
+    boolean uri = config.getBoolean(SQLiteConfig.Property.URI);
+    SQLiteConnection result = new SQLiteConnection(uri || query < 0 ? name : name.substring(0, query), config.openFlags(openFlags));
+    try {
+      config.apply(result);
+    } catch (SQLException e) {
+      result.close();
+      throw e;
     }
     return result;
   }
 
+  /**
+   * The driver doesn't log through java.util.logging.
+   * 
+   * @see java.sql.Driver#getParentLogger()
+   */
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException
+  {
+    throw new SQLFeatureNotSupportedException("Not implemented: getParentLogger()");
+  }
+
+  static SQLiteConfig config(String url, Properties info) throws SQLException
+  {
+    SQLiteConfig config = new SQLiteConfig(info);
+    int query = url.indexOf('?');
+    if (query >= 0) config.parse(url.substring(query + 1));
+    return config;
+  }
+
 }
@@ -0,0 +1,288 @@
+package org.sqlite.jdbc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Blob;
+import java.sql.SQLException;
+
+import org.sqlite.SQLite;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+
+/**
+ * A BLOB read and written in place through an incremental BLOB handle (sqlite3_blob_open), so the value is never
+ * materialized as a whole: every access moves at most one chunk of native memory. Positions are 1-based as in
+ * {@link java.sql.Blob}. The handle has a fixed length, reserve it with <code>zeroblob(n)</code> to write a new value.
+ * <p>
+ * The handle expires when its row is changed or deleted by anything but itself, after which every access fails with
+ * SQLITE_ABORT. It is closed by {@link #free()} or when the connection is closed.
+ *
+ * @see SQLiteConnection#openBlob(String, String, String, long, boolean)
+ */
+public class SQLiteBlob implements Blob
+{
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  private SQLiteConnection connection;
+  private Pointer          handle;
+  private final int        length;
+  private Memory           chunk;
+
+  SQLiteBlob(SQLiteConnection pConnection, Pointer pHandle)
+  {
+    super();
+    connection = pConnection;
+    handle = pHandle;
+    length = SQLite.blob_bytes(pHandle);
+  }
+
+  // ***************************************************************************
+  // *** Blob implementation
+  // ***************************************************************************
+  public long length() throws SQLException
+  {
+    checkIfFreed();
+    return length;
+  }
+
+  public byte[] getBytes(long pos, int len) throws SQLException
+  {
+    int offset = checkPosition(pos);
+    if (len < 0) throw new SQLException("Negative length", "", SQLite.SQLITE_RANGE);
+    byte[] result = new byte[Math.min(len, length - offset)];
+    read(offset, result, 0, result.length);
+    return result;
+  }
+
+  public InputStream getBinaryStream() throws SQLException
+  {
+    checkIfFreed();
+    return new BlobInputStream(0, length);
+  }
+
+  public InputStream getBinaryStream(long pos, long len) throws SQLException
+  {
+    int offset = checkPosition(pos);
+    if (len < 0 || offset + len > length) throw new SQLException("Range exceeds the BLOB", "", SQLite.SQLITE_RANGE);
+    return new BlobInputStream(offset, offset + (int) len);
+  }
+
+  public int setBytes(long pos, byte[] bytes) throws SQLException
+  {
+    return setBytes(pos, bytes, 0, bytes.length);
+  }
+
+  public int setBytes(long pos, byte[] bytes, int offset, int len) throws SQLException
+  {
+    int start = checkPosition(pos);
+    if (start + len > length) throw new SQLException("An incremental BLOB can't grow", "", SQLite.SQLITE_RANGE);
+    write(start, bytes, offset, len);
+    return len;
+  }
+
+  public OutputStream setBinaryStream(long pos) throws SQLException
+  {
+    return new BlobOutputStream(checkPosition(pos));
+  }
+
+  public void free() throws SQLException
+  {
+    if (handle == null) return;
+    try {
+      connection.check(SQLite.blob_close(handle));
+    } finally {
+      handle = null;
+      chunk = null;
+      connection.blobFreed(this);
+    }
+  }
+
+  public long position(byte[] pattern, long start) throws SQLException
+  {
+    throw new SQLException("Not implemented: position(byte[] pattern, long start)");
+  }
+
+  public long position(Blob pattern, long start) throws SQLException
+  {
+    throw new SQLException("Not implemented: position(Blob pattern, long start)");
+  }
+
+  public void truncate(long len) throws SQLException
+  {
+    throw new SQLException("Not implemented: truncate(long len)");
+  }
+
+  // ***************************************************************************
+  // *** Package methods
+  // ***************************************************************************
+  /**
+   * Copies exactly <code>len</code> bytes from <code>in</code> into the BLOB, starting at its first byte.
+   */
+  void copyFrom(InputStream in, long len) throws SQLException
+  {
+    if (len > length) throw new SQLException("An incremental BLOB can't grow", "", SQLite.SQLITE_RANGE);
+    byte[] buf = new byte[(int) Math.min(CHUNK_SIZE, Math.max(len, 1))];
+    int offset = 0;
+    try {
+      while (offset < len) {
+        int n = in.read(buf, 0, (int) Math.min(buf.length, len - offset));
+        if (n < 0) throw new SQLException(String.format("Stream ended after %d of %d bytes", offset, len), "", SQLite.SQLITE_IOERR);
+        write(offset, buf, 0, n);
+        offset += n;
+      }
+    } catch (IOException e) {
+      throw new SQLException(e.getMessage(), "", SQLite.SQLITE_IOERR);
+    }
+  }
+
+  /**
+   * Closes the handle without reporting back to the connection, which is closing.
+   */
+  void close()
+  {
+    if (handle != null) SQLite.blob_close(handle);
+    handle = null;
+    chunk = null;
+  }
+
+  // ***************************************************************************
+  // *** Private methods
+  // ***************************************************************************
+  private void checkIfFreed() throws SQLException
+  {
+    if (handle == null) throw new SQLException("Blob has been freed", "", SQLite.SQLITE_MISUSE);
+  }
+
+  private int checkPosition(long pos) throws SQLException
+  {
+    checkIfFreed();
+    if (pos < 1 || pos > (long) length + 1) {
+      throw new SQLException(String.format("Position %d out of range [1..%d]", pos, (long) length + 1), "", SQLite.SQLITE_RANGE);
+    }
+    return (int) (pos - 1);
+  }
+
+  private Memory chunk()
+  {
+    if (chunk == null) chunk = new Memory(CHUNK_SIZE);
+    return chunk;
+  }
+
+  private void read(int offset, byte[] b, int off, int len) throws SQLException
+  {
+    checkIfFreed();
+    Memory m = chunk();
+    while (len > 0) {
+      int n = Math.min(len, CHUNK_SIZE);
+      connection.check(SQLite.blob_read(handle, m, n, offset));
+      m.read(0, b, off, n);
+      offset += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  private void write(int offset, byte[] b, int off, int len) throws SQLException
+  {
+    checkIfFreed();
+    Memory m = chunk();
+    while (len > 0) {
+      int n = Math.min(len, CHUNK_SIZE);
+      m.write(0, b, off, n);
+      connection.check(SQLite.blob_write(handle, m, n, offset));
+      offset += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  private static IOException ioException(SQLException e)
+  {
+    IOException result = new IOException(e.getMessage());
+    result.initCause(e);
+    return result;
+  }
+
+  // ***************************************************************************
+  private class BlobInputStream extends InputStream
+  {
+    private int position;
+    private final int end;
+
+    BlobInputStream(int pStart, int pEnd)
+    {
+      super();
+      position = pStart;
+      end = pEnd;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+      if (len == 0) return 0;
+      if (position >= end) return -1;
+      int n = Math.min(len, end - position);
+      try {
+        SQLiteBlob.this.read(position, b, off, n);
+      } catch (SQLException e) {
+        throw ioException(e);
+      }
+      position += n;
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+      int k = (int) Math.max(0, Math.min(n, end - position));
+      position += k;
+      return k;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+      return end - position;
+    }
+  }
+
+  // ***************************************************************************
+  private class BlobOutputStream extends OutputStream
+  {
+    private int position;
+
+    BlobOutputStream(int pStart)
+    {
+      super();
+      position = pStart;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+      write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+      if (position + len > length) throw new IOException("An incremental BLOB can't grow");
+      try {
+        SQLiteBlob.this.write(position, b, off, len);
+      } catch (SQLException e) {
+        throw ioException(e);
+      }
+      position += len;
+    }
+  }
+
+}
@@ -0,0 +1,53 @@
+package org.sqlite.jdbc;
+
+import java.util.Random;
+
+/**
+ * Decides how long a connection waits before retrying a lock held by another connection, see
+ * {@link SQLiteConnection#setBusyHandler(SQLiteBusyHandler)}. Called on the thread that hit the lock.
+ */
+public interface SQLiteBusyHandler
+{
+  /**
+   * @param count number of times the lock was retried already for this operation, 0 on the first call
+   * @param waited milliseconds slept so far for this operation
+   * @return milliseconds to sleep before the next attempt, or a negative value to give up with SQLITE_BUSY
+   */
+  long delay(int count, long waited);
+
+  // ***************************************************************************
+  /**
+   * Exponential backoff with jitter: the n-th delay is drawn from [d/2, d] where d = initial * 2^n, capped at
+   * <code>max</code>. The random half spreads connections that collided apart, so they don't retry in lockstep. Gives up
+   * once <code>timeout</code> milliseconds have been spent waiting.
+   */
+  public static class Backoff implements SQLiteBusyHandler
+  {
+    private final long   initial;
+    private final long   max;
+    private final long   timeout;
+    private final Random random = new Random();
+
+    public Backoff(long initial, long max, long timeout)
+    {
+      super();
+      if (initial < 1 || max < initial || timeout < 0) throw new IllegalArgumentException("Invalid backoff");
+      this.initial = initial;
+      this.max = max;
+      this.timeout = timeout;
+    }
+
+    public long delay(int count, long waited)
+    {
+      long remaining = timeout - waited;
+      if (remaining <= 0) return -1;
+      long d = initial;
+      for (int i = 0; i < count && d < max; i++) d <<= 1;
+      d = Math.min(d, max);
+      long half = d / 2;
+      d = half + (long) (random.nextDouble() * (d - half + 1));
+      return Math.min(Math.max(d, 1), remaining);
+    }
+  }
+
+}
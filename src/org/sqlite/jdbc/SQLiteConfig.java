@@ -0,0 +1,341 @@
+package org.sqlite.jdbc;
+
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.sqlite.SQLite;
+
+/**
+ * Typed connection settings: the sqlite3_open_v2 flags, the driver's own settings and the pragmas worth setting on
+ * every connection. Read from the Properties given to {@link Driver#connect(String, Properties)} and from the query part
+ * of the URL, the URL winning. Names are case-insensitive, values are checked here, so that a typo fails the connect
+ * instead of being ignored by SQLite; values are never lowercased, only matched case-insensitively against their
+ * choices.
+ * <p>
+ * The pragmas that are set are run in one batch right after the connection is opened, in the order of
+ * {@link Property}: <code>page_size</code> comes before <code>journal_mode</code>, which fixes it for a WAL database.
+ * Connections opened read-only skip the two of them, as both change the file. <code>mmap</code> and
+ * <code>mmap_size</code> go through {@link SQLiteConnection#setMmapSize(long)}, which checks the size against the
+ * database.
+ */
+public class SQLiteConfig
+{
+  private enum Kind
+  {
+    BOOLEAN, INTEGER, LONG, CHOICE
+  }
+
+  public enum Property
+  {
+    // sqlite3_open_v2 flags, see Driver
+    MODE("mode", Kind.CHOICE, false, "rwc", "Open read-only, read-write, read-write creating the file, or in memory", "ro",
+        "rw", "rwc", "memory"),
+    CACHE("cache", Kind.CHOICE, false, null, "Share the page cache with the other connections of the process", "shared",
+        "private"),
+    THREADING("threading", Kind.CHOICE, false, null,
+        "confined: no mutexes, one thread at a time; serialized: safe for concurrent use", "confined", "serialized"),
+    URI("uri", Kind.BOOLEAN, false, "false", "The file name is an SQLite URI"),
+    // Driver settings
+    AUTOCOMMIT("autocommit", Kind.BOOLEAN, false, "true", "Auto-commit mode of the new connection"),
+    TRANSACTION_MODE("transaction_mode", Kind.CHOICE, false, "DEFERRED", "How transactions are begun in manual-commit mode",
+        "DEFERRED", "IMMEDIATE", "EXCLUSIVE"),
+    STATEMENT_CACHE_SIZE("statement_cache_size", Kind.INTEGER, false, "0", "Number of prepared statements kept for reuse"),
+    BUSY_TIMEOUT("busy_timeout", Kind.INTEGER, false, "0", "Milliseconds to wait for a lock held by another connection"),
+    BUSY_BACKOFF("busy_backoff", Kind.BOOLEAN, false, "false", "Wait for locks in growing steps up to busy_timeout, which must be set"),
+    LEAK_DETECTION("leak_detection", Kind.BOOLEAN, false, "false", "Record where statements are created, to trace leaks"),
+    MMAP("mmap", Kind.BOOLEAN, false, "false", "Read the database through a memory mapping, as much of it as possible"),
+    MMAP_SIZE("mmap_size", Kind.LONG, false, null, "Bytes of the database read through a memory mapping, overrides mmap"),
+    // Pragmas
+    PAGE_SIZE("page_size", Kind.INTEGER, true, null, "Page size in bytes, for a database not created yet"),
+    JOURNAL_MODE("journal_mode", Kind.CHOICE, true, null, "Rollback journal or write-ahead log", "DELETE", "TRUNCATE",
+        "PERSIST", "MEMORY", "WAL", "OFF"),
+    SYNCHRONOUS("synchronous", Kind.CHOICE, true, null, "How often SQLite waits for data to reach the disk", "OFF",
+        "NORMAL", "FULL", "EXTRA"),
+    LOCKING_MODE("locking_mode", Kind.CHOICE, true, null, "EXCLUSIVE keeps the file lock until the connection is closed",
+        "NORMAL", "EXCLUSIVE"),
+    WAL_AUTOCHECKPOINT("wal_autocheckpoint", Kind.INTEGER, true, null, "WAL size in pages that triggers a checkpoint"),
+    CACHE_SIZE("cache_size", Kind.INTEGER, true, null, "Page cache size in pages, or in KiB if negative"),
+    TEMP_STORE("temp_store", Kind.CHOICE, true, null, "Where temporary tables and indices are kept", "DEFAULT", "FILE",
+        "MEMORY"),
+    FOREIGN_KEYS("foreign_keys", Kind.BOOLEAN, true, "true", "Enforce foreign key constraints");
+
+    private final String   name;
+    private final Kind     kind;
+    private final boolean  pragma;
+    private final String   defaultValue;
+    private final String   description;
+    private final String[] choices;
+
+    private Property(String pName, Kind pKind, boolean pPragma, String pDefaultValue, String pDescription, String... pChoices)
+    {
+      name = pName;
+      kind = pKind;
+      pragma = pPragma;
+      defaultValue = pDefaultValue;
+      description = pDescription;
+      choices = pKind == Kind.BOOLEAN ? new String[] { "true", "false" } : pChoices;
+    }
+
+    /**
+     * @return the name used in URLs and Properties
+     */
+    public String getName()
+    {
+      return name;
+    }
+
+    /**
+     * @return <code>true</code> if the property is set with a <code>PRAGMA</code> statement
+     */
+    public boolean isPragma()
+    {
+      return pragma;
+    }
+
+    /**
+     * @return the value used when the property is not set, <code>null</code> for SQLite's own default
+     */
+    public String getDefaultValue()
+    {
+      return defaultValue;
+    }
+
+    /**
+     * @return the property called <code>name</code>, ignoring case, or <code>null</code>
+     */
+    public static Property forName(String name)
+    {
+      for (Property p : values()) {
+        if (p.name.equalsIgnoreCase(name)) return p;
+      }
+      return null;
+    }
+  }
+
+  private final Map<Property, String> values = new EnumMap<Property, String>(Property.class);
+
+  public SQLiteConfig()
+  {
+    super();
+  }
+
+  /**
+   * Takes the known properties of <code>info</code>, ignoring the others, e.g. user and password.
+   */
+  public SQLiteConfig(Properties info) throws SQLException
+  {
+    this();
+    if (info == null) return;
+    for (String name : info.stringPropertyNames()) {
+      Property p = Property.forName(name);
+      if (p != null) set(p, info.getProperty(name));
+    }
+  }
+
+  // ***************************************************************************
+  // *** Public methods
+  // ***************************************************************************
+  /**
+   * @param value the new value, <code>null</code> to fall back to the default; booleans accept true/false, yes/no,
+   *          on/off and 1/0
+   * @throws SQLException if the value is not valid for the property
+   */
+  public void set(Property property, String value) throws SQLException
+  {
+    if (value == null) {
+      values.remove(property);
+    } else {
+      values.put(property, normalize(property, value.trim()));
+    }
+  }
+
+  /**
+   * @return the value set, or <code>null</code>
+   */
+  public String get(Property property)
+  {
+    return values.get(property);
+  }
+
+  public boolean getBoolean(Property property)
+  {
+    return Boolean.parseBoolean(valueOf(property));
+  }
+
+  public int getInt(Property property)
+  {
+    String value = valueOf(property);
+    return value != null ? Integer.parseInt(value) : 0;
+  }
+
+  /**
+   * @return the properties set, under their URL names
+   */
+  public Properties toProperties()
+  {
+    Properties result = new Properties();
+    for (Map.Entry<Property, String> e : values.entrySet()) result.setProperty(e.getKey().name, e.getValue());
+    return result;
+  }
+
+  /**
+   * @return every property, with the value set or else the default
+   */
+  public DriverPropertyInfo[] getPropertyInfo()
+  {
+    Property[] properties = Property.values();
+    DriverPropertyInfo[] result = new DriverPropertyInfo[properties.length];
+    for (int i = 0; i < properties.length; i++) {
+      Property p = properties[i];
+      result[i] = new DriverPropertyInfo(p.name, valueOf(p));
+      result[i].description = p.description;
+      result[i].choices = p.choices.length > 0 ? p.choices.clone() : null;
+      result[i].required = false;
+    }
+    return result;
+  }
+
+  // ***************************************************************************
+  // *** Package methods
+  // ***************************************************************************
+  /**
+   * Sets the known properties of a URL query, <code>name=value&amp;...</code>. Other names are left to SQLite, which
+   * reads its own parameters from URI file names.
+   */
+  void parse(String query) throws SQLException
+  {
+    for (String p : query.split("&")) {
+      int eq = p.indexOf('=');
+      if (eq < 0) continue;
+      Property property = Property.forName(p.substring(0, eq));
+      if (property != null) set(property, p.substring(eq + 1));
+    }
+  }
+
+  /**
+   * @param requested flags asked for by the caller; a read-only open stays read-only whatever the mode
+   * @return the flags for sqlite3_open_v2
+   */
+  int openFlags(int requested)
+  {
+    int access = SQLite.SQLITE_OPEN_READONLY | SQLite.SQLITE_OPEN_READWRITE | SQLite.SQLITE_OPEN_CREATE;
+    int flags = requested;
+    String mode = values.get(Property.MODE);
+    if (mode != null && (requested & SQLite.SQLITE_OPEN_READONLY) == 0) {
+      flags &= ~(access | SQLite.SQLITE_OPEN_MEMORY);
+      if (mode.equals("ro")) {
+        flags |= SQLite.SQLITE_OPEN_READONLY;
+      } else if (mode.equals("rw")) {
+        flags |= SQLite.SQLITE_OPEN_READWRITE;
+      } else if (mode.equals("rwc")) {
+        flags |= SQLite.SQLITE_OPEN_READWRITE | SQLite.SQLITE_OPEN_CREATE;
+      } else {
+        flags |= SQLite.SQLITE_OPEN_READWRITE | SQLite.SQLITE_OPEN_CREATE | SQLite.SQLITE_OPEN_MEMORY;
+      }
+    } else if ("memory".equals(mode)) {
+      flags |= SQLite.SQLITE_OPEN_MEMORY;
+    }
+    String cache = values.get(Property.CACHE);
+    if (cache != null) {
+      flags &= ~(SQLite.SQLITE_OPEN_SHAREDCACHE | SQLite.SQLITE_OPEN_PRIVATECACHE);
+      flags |= cache.equals("shared") ? SQLite.SQLITE_OPEN_SHAREDCACHE : SQLite.SQLITE_OPEN_PRIVATECACHE;
+    }
+    String threading = values.get(Property.THREADING);
+    if (threading != null) {
+      flags &= ~(SQLite.SQLITE_OPEN_NOMUTEX | SQLite.SQLITE_OPEN_FULLMUTEX);
+      flags |= threading.equals("confined") ? SQLite.SQLITE_OPEN_NOMUTEX : SQLite.SQLITE_OPEN_FULLMUTEX;
+    }
+    if (getBoolean(Property.URI)) flags |= SQLite.SQLITE_OPEN_URI;
+    return flags;
+  }
+
+  /**
+   * @return the pragmas set, as one batch of statements, empty if none is set
+   */
+  String pragmas(boolean readOnly)
+  {
+    StringBuilder result = new StringBuilder();
+    for (Map.Entry<Property, String> e : values.entrySet()) {
+      Property p = e.getKey();
+      if (!p.pragma || readOnly && (p == Property.PAGE_SIZE || p == Property.JOURNAL_MODE)) continue;
+      String value = e.getValue();
+      if (p.kind == Kind.BOOLEAN) value = Boolean.parseBoolean(value) ? "ON" : "OFF";
+      result.append("PRAGMA ").append(p.name).append(" = ").append(value).append(';');
+    }
+    return result.toString();
+  }
+
+  /**
+   * Applies everything but the open flags to a connection just opened.
+   */
+  void apply(SQLiteConnection connection) throws SQLException
+  {
+    // First, so that journal_mode waits for a lock like any other statement
+    int busyTimeout = getInt(Property.BUSY_TIMEOUT);
+    if (getBoolean(Property.BUSY_BACKOFF)) {
+      // Without a total the handler would give up on the first SQLITE_BUSY
+      if (busyTimeout <= 0) throw new SQLException("busy_backoff requires a positive busy_timeout", "", SQLite.SQLITE_MISUSE);
+      connection.setBusyHandler(new SQLiteBusyHandler.Backoff(Driver.BUSY_BACKOFF_INITIAL, Driver.BUSY_BACKOFF_MAX, busyTimeout));
+    } else if (busyTimeout > 0) {
+      connection.setBusyTimeout(busyTimeout);
+    }
+    String pragmas = pragmas(connection.isReadOnly());
+    if (pragmas.length() > 0) connection.check(SQLite.exec(connection.handle, pragmas, null, null, null));
+    if (values.containsKey(Property.MMAP_SIZE)) {
+      connection.setMmapSize(Long.parseLong(values.get(Property.MMAP_SIZE)));
+    } else if (values.containsKey(Property.MMAP)) {
+      connection.setMmapSize(getBoolean(Property.MMAP) ? SQLiteConnection.MMAP_MAX : 0);
+    }
+    if (values.containsKey(Property.STATEMENT_CACHE_SIZE)) connection.setStatementCacheSize(getInt(Property.STATEMENT_CACHE_SIZE));
+    if (values.containsKey(Property.LEAK_DETECTION)) connection.setLeakDetection(getBoolean(Property.LEAK_DETECTION));
+    if (values.containsKey(Property.TRANSACTION_MODE)) {
+      connection.setTransactionMode(SQLiteConnection.TransactionMode.valueOf(values.get(Property.TRANSACTION_MODE)));
+    }
+    if (values.containsKey(Property.AUTOCOMMIT)) connection.setAutoCommit(getBoolean(Property.AUTOCOMMIT));
+  }
+
+  // ***************************************************************************
+  // *** Private methods
+  // ***************************************************************************
+  private String valueOf(Property property)
+  {
+    String value = values.get(property);
+    return value != null ? value : property.defaultValue;
+  }
+
+  private static String normalize(Property property, String value) throws SQLException
+  {
+    switch (property.kind) {
+      case BOOLEAN:
+        if (value.equals("1") || value.equalsIgnoreCase("true") || value.equalsIgnoreCase("yes") || value.equalsIgnoreCase("on")) {
+          return "true";
+        } else if (value.equals("0") || value.equalsIgnoreCase("false") || value.equalsIgnoreCase("no")
+            || value.equalsIgnoreCase("off")) {
+          return "false";
+        }
+        break;
+      case INTEGER:
+        try {
+          return String.valueOf(Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+          break;
+        }
+      case LONG:
+        try {
+          return String.valueOf(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+          break;
+        }
+      case CHOICE:
+        for (String c : property.choices) {
+          if (c.equalsIgnoreCase(value)) return c;
+        }
+        break;
+    }
+    throw new SQLException(String.format("Invalid value for %s: %s", property.name, value));
+  }
+
+}
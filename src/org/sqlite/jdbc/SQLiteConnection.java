@@ -1,5 +1,6 @@
 package org.sqlite.jdbc;
 
+import java.lang.ref.Cleaner;
 import java.sql.Array;
 import java.sql.Blob;
 import java.sql.CallableStatement;
@@ -11,13 +12,21 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLClientInfoException;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
 import java.sql.SQLWarning;
 import java.sql.SQLXML;
 import java.sql.Savepoint;
 import java.sql.Statement;
 import java.sql.Struct;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 import org.sqlite.SQLite;
 
@@ -26,6 +35,10 @@ import com.sun.jna.ptr.PointerByReference;
 
 /**
  * A SQLiteConnection represents a session with a specific database. Within the context of a Connection, SQL statements are executed and results are returned.
+ * <p>
+ * Whether several threads may use one connection at the same time depends on the flags it was opened with: a
+ * connection opened with SQLITE_OPEN_NOMUTEX, e.g. through the <code>threading=confined</code> URL property of
+ * {@link Driver}, must be used by one thread at a time.
  * 
  * @author Lyubomir Ivanov
  * @version $Id: SQLiteConnection.java $
@@ -33,8 +46,85 @@ import com.sun.jna.ptr.PointerByReference;
  */
 public class SQLiteConnection implements Connection
 {
-  Pointer                handle   = null;
-  private SQLiteMetaData metaData = null;
+  // Virtual machine instructions between two query timeout checks: well under a millisecond of work
+  private static final int             PROGRESS_OPS         = 10000;
+  // SAVEPOINT, RELEASE and ROLLBACK TO statements kept prepared
+  private static final int             SAVEPOINT_STATEMENTS = 32;
+
+  /**
+   * For {@link #setMmapSize(long)}: map as much of the file as the library allows.
+   */
+  public static final long             MMAP_MAX             = Long.MAX_VALUE;
+
+  /**
+   * How the transaction of a connection in manual-commit mode is begun, see {@link #setTransactionMode(TransactionMode)}.
+   */
+  public enum TransactionMode
+  {
+    /** Takes the read and write locks when a statement first needs them */
+    DEFERRED,
+    /** Takes the write lock right away: other writers wait, readers go on */
+    IMMEDIATE,
+    /** Takes the write lock right away and, outside WAL mode, keeps readers out too */
+    EXCLUSIVE
+  }
+
+  Pointer                              handle               = null;
+  // Every sqlite3_stmt of the connection
+  final StatementRegistry              statements           = new StatementRegistry();
+  // Closes the database, when close() is called or the connection is collected without it
+  private Cleaner.Cleanable            closer               = null;
+  private final boolean                openedReadOnly;
+  private boolean                      readOnly             = false;
+  private boolean                      autoCommit           = true;
+  private TransactionMode              transactionMode      = TransactionMode.DEFERRED;
+  private String                       beginSql             = "BEGIN DEFERRED;";
+  private SQLiteMetaData               metaData             = null;
+  private int                          statementCacheSize   = 0;
+  private long                         statementCacheHits   = 0;
+  private long                         statementCacheMisses = 0;
+  private int                          busyTimeout          = 0;
+  private SQLiteBusyHandler            busyHandler          = null;
+  // Referenced for as long as SQLite may call it
+  private SQLite.BusyCallback          busyCallback         = null;
+  // Written only on the stepping thread, read by monitoring threads
+  private volatile long                busyRetries          = 0;
+  private volatile long                busyWaitNanos        = 0;
+  // Query timeout of the step in progress, checked by the progress handler while armed
+  private long                         timeoutDeadline      = 0;
+  private volatile boolean             timeoutArmed         = false;
+  // Referenced for as long as SQLite may call it
+  private SQLite.ProgressCallback      progressCallback     = null;
+  private boolean                      progressInstalled    = false;
+  // Last size set through setMmapSize, -1 for the library default
+  private long                         mmapSize             = -1;
+  private SQLWarning                   warnings             = null;
+  // Savepoints of the current transaction, innermost last
+  private final List<SQLiteSavepoint>  savepoints           = new ArrayList<SQLiteSavepoint>();
+  private int                          savepointIds         = 0;
+  private final Map<String, Pointer>   savepointStatements  = new LinkedHashMap<String, Pointer>(16, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Pointer> eldest)
+    {
+      if (size() <= SAVEPOINT_STATEMENTS) return false;
+      statements.free(eldest.getValue());
+      return true;
+    }
+  };
+  private final Set<SQLiteBlob>        openBlobs            = new HashSet<SQLiteBlob>();
+  private final Map<String, Pointer>   statementCache       = new LinkedHashMap<String, Pointer>(16, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Pointer> eldest)
+    {
+      if (size() <= statementCacheSize) return false;
+      statements.free(eldest.getValue());
+      return true;
+    }
+  };
 
   /**
    * Get handle to an sqlite database
@@ -43,40 +133,54 @@ public class SQLiteConnection implements Connection
    */
   public SQLiteConnection(String dbFilename) throws SQLException
   {
-    PointerByReference pdb = new PointerByReference();
-    try {
-      check(SQLite.open(dbFilename, pdb));
-      check(SQLite.exec(pdb.getValue(),"PRAGMA foreign_keys = ON",null,null,null));
-    } finally {
-      handle = pdb.getValue();
-    }
+    this(dbFilename, SQLite.SQLITE_OPEN_READWRITE | SQLite.SQLITE_OPEN_CREATE);
   }
 
   /**
-   * 1. A Connection object is automatically closed when it is garbage collected. (1.5)
+   * Get handle to an sqlite database opened with sqlite3_open_v2
    * 
-   * @see java.sql.Connection#close()
+   * @param openFlags combination of the SQLite.SQLITE_OPEN_* flags
    */
-  @Override
-  protected void finalize() throws Throwable
+  public SQLiteConnection(String dbFilename, int openFlags) throws SQLException
   {
-    close();
-    super.finalize();
+    openedReadOnly = (openFlags & SQLite.SQLITE_OPEN_READONLY) != 0;
+    readOnly = openedReadOnly;
+    PointerByReference pdb = new PointerByReference();
+    try {
+      check(SQLite.open_v2(dbFilename, pdb, openFlags, null));
+      check(SQLite.exec(pdb.getValue(),"PRAGMA foreign_keys = ON",null,null,null));
+    } finally {
+      handle = pdb.getValue();
+      if (handle != null) closer = StatementRegistry.CLEANER.register(this, new StatementRegistry.Closer(handle, statements));
+    }
   }
 
   /**
    * <ul>
    * <li>1. Calling the method close on a Connection object that is already closed is a no-op. (1.5)</li>
    * <li>2. If the close method is called and there is an active transaction, the results are implementation-defined. (1.6)</li>
+   * <li>3. A Connection object is automatically closed when it is garbage collected. (1.5)</li>
    * </ul>
+   * Statements still open are closed, and every prepared statement handle is finalized before the database is closed.
    * 
    * @see java.sql.Connection#close()
    */
-  public void close()
+  public synchronized void close()
   {
     if (handle != null) {
-      // TODO: finalize all prepared statements and close all BLOB handles
-      SQLite.close(handle);
+      // Open BLOB handles would keep the database from closing
+      closeBlobs();
+      for (SQLiteStatement s : statements.statements()) {
+        try {
+          s.close();
+        } catch (SQLException e) {
+          // Its handle is finalized below anyway
+        }
+      }
+      statementCache.clear();
+      savepointStatements.clear();
+      // Finalizes the cached handles and any other one left, then closes the database
+      closer.clean();
       handle = null;
     }
   }
@@ -159,11 +263,12 @@ public class SQLiteConnection implements Connection
   public SQLWarning getWarnings() throws SQLException
   {
     checkConnection();
-    return null;
+    return warnings;
   }
 
   public void clearWarnings() throws SQLException
   {
+    warnings = null;
   }
 
   public String getCatalog() throws SQLException
@@ -207,9 +312,13 @@ public class SQLiteConnection implements Connection
     throw new SQLException("Not implemented: getTypeMap");
   }
 
+  /**
+   * @see #setReadOnly(boolean)
+   */
   public boolean isReadOnly() throws SQLException
   {
-    throw new SQLException("Not implemented: isReadOnly");
+    checkConnection();
+    return readOnly;
   }
 
   public String nativeSQL(String sql) throws SQLException
@@ -262,9 +371,15 @@ public class SQLiteConnection implements Connection
     throw new SQLException("Not implemented: getClientInfo(String arg0)");
   }
 
-  public boolean isValid(int arg0) throws SQLException
+  /**
+   * A local database has no link that could be lost: the connection is valid as long as its handle is open.
+   * 
+   * @see java.sql.Connection#isValid(int)
+   */
+  public boolean isValid(int timeout) throws SQLException
   {
-    throw new SQLException("Not implemented: isValid(int arg0");
+    if (timeout < 0) throw new SQLException("Negative timeout", "", SQLite.SQLITE_MISUSE);
+    return handle != null;
   }
 
   /**
@@ -272,36 +387,40 @@ public class SQLiteConnection implements Connection
    */
   public boolean getAutoCommit() throws SQLException
   {
-    return SQLite.get_autocommit(handle) > 0;
+    // A transaction begun with SQL counts as manual commit until it ends
+    return autoCommit && SQLite.get_autocommit(handle) > 0;
   }
 
   /**
+   * 1. If this method is called during a transaction, the transaction is committed. (1.5)
+   * <p>
+   * Turning auto-commit off doesn't begin a transaction yet: it is begun right before the next statement executes,
+   * see {@link #setTransactionMode(TransactionMode)}. An idle connection thus holds no locks and, in WAL mode, no read
+   * snapshot that would keep checkpoints from resetting the log.
+   * 
    * @see java.sql.Connection#setAutoCommit(boolean)
    */
-  public void setAutoCommit(boolean autoCommit) throws SQLException
+  public void setAutoCommit(boolean pAutoCommit) throws SQLException
   {
-    boolean modeAutoCommit = SQLite.get_autocommit(handle) > 0;
-    if (modeAutoCommit == autoCommit) return;
-
-    if (modeAutoCommit) {
-      // auto-commit=false so we have to put database in non-autocommit mode
-      check(SQLite.exec(handle, "BEGIN;", null, null, null));
-    } else {
-      // auto-commit=true so we have to put database in autocommit mode
+    if (pAutoCommit && SQLite.get_autocommit(handle) == 0) {
       check(SQLite.exec(handle, "COMMIT;", null, null, null));
+      savepoints.clear();
     }
+    autoCommit = pAutoCommit;
   }
 
   /**
    * 1. Throws SQLException if this Connection object is in auto-commit mode (1.5)
+   * <p>
+   * The next transaction is only begun by the next statement.
    * 
    * @see java.sql.Connection#commit()
    */
   public void commit() throws SQLException
   {
-    boolean modeAutoCommit = SQLite.get_autocommit(handle) > 0;
-    if (modeAutoCommit) throw new SQLException("Can't call commit() when in AutoCommit mode");
-    check(SQLite.exec(handle, "COMMIT;BEGIN;", null, null, null));
+    if (getAutoCommit()) throw new SQLException("Can't call commit() when in AutoCommit mode");
+    if (SQLite.get_autocommit(handle) == 0) check(SQLite.exec(handle, "COMMIT;", null, null, null));
+    savepoints.clear();
   }
 
   /**
@@ -311,14 +430,53 @@ public class SQLiteConnection implements Connection
    */
   public void rollback() throws SQLException
   {
-    boolean modeAutoCommit = SQLite.get_autocommit(handle) > 0;
-    if (modeAutoCommit) throw new SQLException("Can't call rollback() when in AutoCommit mode");
-    check(SQLite.exec(handle, "ROLLBACK;BEGIN;", null, null, null));
+    if (getAutoCommit()) throw new SQLException("Can't call rollback() when in AutoCommit mode");
+    if (SQLite.get_autocommit(handle) == 0) check(SQLite.exec(handle, "ROLLBACK;", null, null, null));
+    savepoints.clear();
   }
 
+  /**
+   * Sets how transactions are begun in manual-commit mode, from the next one on. DEFERRED (the default) waits for a
+   * lock until a statement needs it, so a transaction that reads first and writes later can fail with SQLITE_BUSY when
+   * it upgrades to a write lock; IMMEDIATE takes the write lock when the transaction begins, through the busy handler.
+   */
+  public void setTransactionMode(TransactionMode mode)
+  {
+    if (mode == null) throw new IllegalArgumentException("No transaction mode");
+    transactionMode = mode;
+    beginSql = "BEGIN " + mode + ";";
+  }
+
+  public TransactionMode getTransactionMode()
+  {
+    return transactionMode;
+  }
+
+  /**
+   * Begins the transaction of a connection in manual-commit mode if none is open, right before a statement executes.
+   */
+  void begin() throws SQLException
+  {
+    if (!autoCommit && SQLite.get_autocommit(handle) != 0) {
+      check(SQLite.exec(handle, beginSql, null, null, null));
+      // Left over if the last transaction was ended with SQL
+      savepoints.clear();
+    }
+  }
+
+  /**
+   * A connection opened with SQLITE_OPEN_READONLY is read-only for good. Any other one is switched with
+   * <code>PRAGMA query_only</code>, so writes fail with SQLITE_READONLY while the flag is set.
+   * 
+   * @see java.sql.Connection#setReadOnly(boolean)
+   */
   public void setReadOnly(boolean readOnly) throws SQLException
   {
-    throw new SQLException("Not implemented: setReadOnly");
+    checkConnection();
+    if (readOnly == this.readOnly) return;
+    if (openedReadOnly) throw new SQLException("Connection was opened read-only", "", SQLite.SQLITE_READONLY);
+    check(SQLite.exec(handle, readOnly ? "PRAGMA query_only = 1;" : "PRAGMA query_only = 0;", null, null, null));
+    this.readOnly = readOnly;
   }
 
   public void setTypeMap(Map<String, Class<?>> map) throws SQLException
@@ -327,26 +485,422 @@ public class SQLiteConnection implements Connection
   }
 
   // ***************************************************************************
-  // *** Functionality not supported by SQLite
+  // *** Prepared statement cache
   // ***************************************************************************
-  public void rollback(Savepoint savepoint) throws SQLException
+
+  /**
+   * Sets the maximum number of idle prepared statements kept by this connection. A closed PreparedStatement is reset and
+   * parked in an LRU cache keyed by its SQL text; the next prepareStatement with the same text reuses it instead of
+   * calling sqlite3_prepare_v2. Statements pushed out of the cache are finalized. 0 (the default) disables the cache.
+   */
+  public void setStatementCacheSize(int size)
+  {
+    statementCacheSize = Math.max(size, 0);
+    Iterator<Pointer> i = statementCache.values().iterator();
+    while (statementCache.size() > statementCacheSize && i.hasNext()) {
+      statements.free(i.next());
+      i.remove();
+    }
+  }
+
+  public int getStatementCacheSize()
+  {
+    return statementCacheSize;
+  }
+
+  /**
+   * @return number of prepareStatement calls served from the statement cache
+   */
+  public long getStatementCacheHits()
+  {
+    return statementCacheHits;
+  }
+
+  /**
+   * @return number of prepareStatement calls that had to prepare a new statement while the cache was enabled
+   */
+  public long getStatementCacheMisses()
+  {
+    return statementCacheMisses;
+  }
+
+  /**
+   * @return an idle statement prepared from <code>sql</code>, removed from the cache, or <code>null</code>
+   */
+  Pointer takeCachedStatement(String sql)
+  {
+    if (statementCacheSize == 0) return null;
+    Pointer stmt = statementCache.remove(sql);
+    if (stmt != null) {
+      statementCacheHits++;
+    } else {
+      statementCacheMisses++;
+    }
+    return stmt;
+  }
+
+  /**
+   * Resets <code>stmt</code>, clears its bindings and parks it in the statement cache.
+   * 
+   * @return <code>false</code> if the cache is disabled and the caller has to finalize the statement itself
+   */
+  boolean cacheStatement(String sql, Pointer stmt)
+  {
+    if (statementCacheSize == 0 || handle == null) return false;
+    SQLite.reset(stmt);
+    SQLite.clear_bindings(stmt);
+    Pointer replaced = statementCache.put(sql, stmt);
+    if (replaced != null) statements.free(replaced);
+    return true;
+  }
+
+  // ***************************************************************************
+  // *** Leak detection
+  // ***************************************************************************
+  /**
+   * Records where each Statement is created from now on, so that the ones garbage collected without being closed can be
+   * traced back, see {@link #getLeakedStatements()}. Costs a stack trace per statement: meant for tests and debugging.
+   */
+  public void setLeakDetection(boolean enabled)
+  {
+    statements.setLeakDetection(enabled);
+  }
+
+  public boolean isLeakDetection()
+  {
+    return statements.isLeakDetection();
+  }
+
+  /**
+   * @return number of statements garbage collected without being closed, counted with or without leak detection
+   */
+  public long getLeakedStatementCount()
+  {
+    return statements.getLeakCount();
+  }
+
+  /**
+   * @return where the last leaked statements created with leak detection on were created, oldest first
+   */
+  public List<Throwable> getLeakedStatements()
+  {
+    return statements.getLeakTraces();
+  }
+
+  // ***************************************************************************
+  // *** Lock contention
+  // ***************************************************************************
+  /**
+   * Sets how long an operation waits for a lock held by another connection before it fails with SQLITE_BUSY, see
+   * sqlite3_busy_timeout. 0 (the default) fails at once. Replaces the busy handler.
+   */
+  public void setBusyTimeout(int milliseconds) throws SQLException
+  {
+    checkConnection();
+    check(SQLite.busy_timeout(handle, Math.max(milliseconds, 0)));
+    busyTimeout = Math.max(milliseconds, 0);
+    busyHandler = null;
+    busyCallback = null;
+  }
+
+  /**
+   * @return the busy timeout in milliseconds, 0 if there is none or a busy handler is installed
+   */
+  public int getBusyTimeout()
+  {
+    return busyTimeout;
+  }
+
+  /**
+   * Waits for locks held by other connections for as long as <code>handler</code> asks, see
+   * {@link SQLiteBusyHandler.Backoff}. Unlike a busy timeout, the retries and the time spent sleeping are counted.
+   * Replaces the busy timeout; <code>null</code> removes the handler.
+   */
+  public void setBusyHandler(SQLiteBusyHandler handler) throws SQLException
+  {
+    checkConnection();
+    SQLite.BusyCallback callback = handler != null ? new BusyCallback(handler) : null;
+    check(SQLite.busy_handler(handle, callback, null));
+    busyTimeout = 0;
+    busyHandler = handler;
+    busyCallback = callback;
+  }
+
+  public SQLiteBusyHandler getBusyHandler()
+  {
+    return busyHandler;
+  }
+
+  /**
+   * @return number of times the busy handler retried a lock
+   */
+  public long getBusyRetries()
+  {
+    return busyRetries;
+  }
+
+  /**
+   * @return milliseconds the busy handler spent sleeping in total
+   */
+  public long getBusyWaitTime()
+  {
+    return busyWaitNanos / 1000000;
+  }
+
+  // ***************************************************************************
+  // *** Memory-mapped I/O
+  // ***************************************************************************
+  /**
+   * Reads up to <code>bytes</code> of each database file through a memory mapping, see PRAGMA mmap_size. Pages then come
+   * straight from the OS page cache instead of being read into a buffer and copied into SQLite's page cache, which pays
+   * off for read-heavy work on databases that fit in RAM. 0 turns the mapping off, {@link #MMAP_MAX} maps as much as
+   * the library allows.
+   * <p>
+   * The size in effect is capped by the library's SQLITE_MAX_MMAP_SIZE. If it is smaller than the database, the rest of
+   * the file is read as before, and a warning is added to the connection's warnings.
+   * 
+   * @return the size in effect, in bytes
+   */
+  public long setMmapSize(long bytes) throws SQLException
+  {
+    checkConnection();
+    if (bytes < 0) throw new SQLException("Invalid mmap size: " + bytes, "", SQLite.SQLITE_MISUSE);
+    long effective = queryLong("PRAGMA mmap_size = " + bytes);
+    mmapSize = effective;
+    if (bytes > 0) {
+      long fileSize = queryLong("SELECT page_count * page_size FROM pragma_page_count(), pragma_page_size()");
+      if (effective < fileSize) {
+        addWarning(new SQLWarning(String.format("mmap_size %d maps %d of the %d bytes of the database", bytes, effective,
+            fileSize)));
+      }
+    }
+    return effective;
+  }
+
+  /**
+   * @return the mmap size in effect, in bytes, 0 if the database is not memory mapped
+   */
+  public long getMmapSize() throws SQLException
+  {
+    checkConnection();
+    return queryLong("PRAGMA mmap_size");
+  }
+
+  // ***************************************************************************
+  // *** Query timeout and cancel
+  // ***************************************************************************
+  /**
+   * Arms the query timeout for the step about to run. The progress handler is installed by the first timed step and
+   * stays until {@link #removeTimeout()}, when the statement is reset or its result set is done, so the steps of a result
+   * set don't each cross to native code to install and remove it. Between timed steps it returns right away.
+   */
+  void startTimeout(long milliseconds)
+  {
+    timeoutDeadline = System.nanoTime() + milliseconds * 1000000;
+    timeoutArmed = true;
+    if (!progressInstalled) {
+      if (progressCallback == null) progressCallback = new TimeoutCallback();
+      SQLite.progress_handler(handle, PROGRESS_OPS, progressCallback, null);
+      progressInstalled = true;
+    }
+  }
+
+  void endTimeout()
+  {
+    timeoutArmed = false;
+  }
+
+  /**
+   * Removes the progress handler if a timed step installed it, so steps without a timeout never call back into Java.
+   */
+  void removeTimeout()
+  {
+    if (!progressInstalled || handle == null) return;
+    SQLite.progress_handler(handle, 0, null, null);
+    progressInstalled = false;
+  }
+
+  /**
+   * @see SQLiteStatement#cancel()
+   */
+  synchronized void interrupt()
+  {
+    if (handle != null) SQLite.interrupt(handle);
+  }
+
+  // ***************************************************************************
+  // *** Incremental BLOB I/O
+  // ***************************************************************************
+  /**
+   * Opens a BLOB for incremental I/O, see {@link SQLiteBlob}.
+   * 
+   * @param database schema name, "main" for the database the connection was opened with
+   * @param rowid rowid of the row, which must be in a rowid table
+   * @param writable <code>true</code> to open the handle read-write
+   */
+  public SQLiteBlob openBlob(String database, String table, String column, long rowid, boolean writable) throws SQLException
+  {
+    checkConnection();
+    begin();
+    PointerByReference pBlob = new PointerByReference();
+    try {
+      check(SQLite.blob_open(handle, database, table, column, rowid, writable ? 1 : 0, pBlob));
+    } catch (SQLException e) {
+      if (pBlob.getValue() != null) SQLite.blob_close(pBlob.getValue());
+      throw e;
+    }
+    SQLiteBlob result = new SQLiteBlob(this, pBlob.getValue());
+    openBlobs.add(result);
+    return result;
+  }
+
+  /**
+   * @see #openBlob(String, String, String, long, boolean)
+   */
+  public SQLiteBlob openBlob(String table, String column, long rowid, boolean writable) throws SQLException
+  {
+    return openBlob("main", table, column, rowid, writable);
+  }
+
+  void blobFreed(SQLiteBlob blob)
+  {
+    openBlobs.remove(blob);
+  }
+
+  private void closeBlobs()
   {
-    throw new SQLException("Feature 'Savepoints' is not supported.");
+    for (SQLiteBlob blob : openBlobs) blob.close();
+    openBlobs.clear();
   }
 
+  // ***************************************************************************
+  // *** Pooling support
+  // ***************************************************************************
+  /**
+   * Brings the connection back to the state a new borrower expects: open BLOB handles are closed, a transaction left
+   * open is rolled back, warnings are cleared and the auto-commit, read-only and transaction modes and the mmap size
+   * are restored. The statement cache is kept.
+   * 
+   * @param pMmapSize the mmap size to restore if {@link #setMmapSize(long)} changed it, -1 to leave it
+   */
+  void reset(boolean pAutoCommit, TransactionMode mode, long pMmapSize) throws SQLException
+  {
+    checkConnection();
+    closeBlobs();
+    if (SQLite.get_autocommit(handle) == 0) check(SQLite.exec(handle, "ROLLBACK;", null, null, null));
+    savepoints.clear();
+    setAutoCommit(pAutoCommit);
+    setTransactionMode(mode);
+    setReadOnly(openedReadOnly);
+    if (pMmapSize >= 0 && mmapSize != pMmapSize) setMmapSize(pMmapSize);
+    warnings = null;
+  }
+
+  /**
+   * @return the size last set through {@link #setMmapSize(long)}, -1 if it was never called
+   */
+  long mmapSize()
+  {
+    return mmapSize;
+  }
+
+  // ***************************************************************************
+  // *** Savepoints
+  // ***************************************************************************
+  /**
+   * Unnamed savepoints are named after their nesting depth, so a loop setting and releasing one savepoint per row runs
+   * the same two prepared statements over and over.
+   * 
+   * @see java.sql.Connection#setSavepoint()
+   */
   public Savepoint setSavepoint() throws SQLException
   {
-    throw new SQLException("Feature 'Savepoints' is not supported.");
+    return savepoint(++savepointIds, null);
   }
 
+  /**
+   * @see java.sql.Connection#setSavepoint(java.lang.String)
+   */
   public Savepoint setSavepoint(String name) throws SQLException
   {
-    throw new SQLException("Feature 'Savepoints' is not supported.");
+    if (name == null) throw new SQLException("No savepoint name", "", SQLite.SQLITE_MISUSE);
+    return savepoint(0, name);
+  }
+
+  /**
+   * Undoes the changes made after <code>savepoint</code> was set. The savepoint stays, the ones set after it are
+   * released.
+   * 
+   * @see java.sql.Connection#rollback(java.sql.Savepoint)
+   */
+  public void rollback(Savepoint savepoint) throws SQLException
+  {
+    int i = indexOf(savepoint);
+    execCached("ROLLBACK TO " + savepoints.get(i).sqlName + ";");
+    release(i + 1);
   }
 
+  /**
+   * Releases <code>savepoint</code> and the ones set after it, their changes become part of the enclosing transaction
+   * or savepoint.
+   * 
+   * @see java.sql.Connection#releaseSavepoint(java.sql.Savepoint)
+   */
   public void releaseSavepoint(Savepoint savepoint) throws SQLException
   {
-    throw new SQLException("Feature 'Savepoints' is not supported.");
+    int i = indexOf(savepoint);
+    execCached("RELEASE " + savepoints.get(i).sqlName + ";");
+    release(i);
+  }
+
+  private Savepoint savepoint(int id, String name) throws SQLException
+  {
+    checkConnection();
+    if (getAutoCommit()) throw new SQLException("Can't set a savepoint in AutoCommit mode", "", SQLite.SQLITE_MISUSE);
+    begin();
+    String sqlName = name != null ? '"' + name.replace("\"", "\"\"") + '"' : "JDBC_SAVEPOINT_" + savepoints.size();
+    execCached("SAVEPOINT " + sqlName + ";");
+    SQLiteSavepoint result = new SQLiteSavepoint(id, name, sqlName);
+    savepoints.add(result);
+    return result;
+  }
+
+  private int indexOf(Savepoint savepoint) throws SQLException
+  {
+    checkConnection();
+    // Savepoints of a transaction that ended are gone
+    if (SQLite.get_autocommit(handle) != 0) savepoints.clear();
+    int i = savepoints.lastIndexOf(savepoint);
+    if (i < 0) throw new SQLException("Savepoint is not valid", "", SQLite.SQLITE_MISUSE);
+    return i;
+  }
+
+  /**
+   * Forgets the savepoints from <code>from</code> on.
+   */
+  private void release(int from)
+  {
+    for (int i = savepoints.size() - 1; i >= from; i--) savepoints.remove(i);
+  }
+
+  /**
+   * Runs a statement without parameters nor result, prepared once.
+   */
+  private void execCached(String sql) throws SQLException
+  {
+    Pointer stmt = savepointStatements.get(sql);
+    if (stmt == null) {
+      PointerByReference pStmt = new PointerByReference();
+      check(SQLite.prepare_v2(handle, sql, -1, pStmt, null));
+      stmt = pStmt.getValue();
+      statements.add(stmt);
+      savepointStatements.put(sql, stmt);
+    }
+    try {
+      check(SQLite.step(stmt));
+    } finally {
+      SQLite.reset(stmt);
+    }
   }
 
   // ***************************************************************************
@@ -367,7 +921,9 @@ public class SQLiteConnection implements Connection
         break;
 
       // case SQLITE_ABORT:trow new Abort(); = 4; // Callback routine requested an abort
-      // int SQLITE_INTERRUPT = 9; // Operation terminated by sqlite3_interrupt()
+      case SQLite.SQLITE_INTERRUPT:
+        // Query timeout or cancel()
+        throw new SQLTimeoutException(SQLite.errmsg(handle), "", result);
       // int SQLITE_BUSY = 5; // The database file is locked
       // int SQLITE_LOCKED = 6; // A table in the database is locked
 
@@ -379,6 +935,31 @@ public class SQLiteConnection implements Connection
     return result;
   }
 
+  private void addWarning(SQLWarning warning)
+  {
+    if (warnings == null) {
+      warnings = warning;
+    } else {
+      warnings.setNextWarning(warning);
+    }
+  }
+
+  /**
+   * Runs a query for a single number, without beginning a transaction in manual-commit mode.
+   */
+  private long queryLong(String sql) throws SQLException
+  {
+    PointerByReference pStmt = new PointerByReference();
+    check(SQLite.prepare_v2(handle, sql, -1, pStmt, null));
+    Pointer stmt = pStmt.getValue();
+    statements.add(stmt);
+    try {
+      return check(SQLite.step(stmt)) == SQLite.SQLITE_ROW ? SQLite.column_int64(stmt, 0) : 0;
+    } finally {
+      statements.free(stmt);
+    }
+  }
+
   private void checkStatementFlags(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException
   {
     if (resultSetType != ResultSet.TYPE_FORWARD_ONLY) {
@@ -392,14 +973,53 @@ public class SQLiteConnection implements Connection
     }
   }
 
-  public boolean isWrapperFor(Class<?> arg0) throws SQLException
+  public boolean isWrapperFor(Class<?> iface) throws SQLException
+  {
+    return iface.isInstance(this);
+  }
+
+  public <T> T unwrap(Class<T> iface) throws SQLException
+  {
+    if (!iface.isInstance(this)) throw new SQLException(String.format("Not a wrapper for %s", iface.getName()));
+    return iface.cast(this);
+  }
+
+  /**
+   * Schemas are not supported, the request is ignored.
+   * 
+   * @see java.sql.Connection#setSchema(java.lang.String)
+   */
+  public void setSchema(String schema) throws SQLException
   {
-    throw new SQLException("Not implemented: isWrapperFor");
+    checkConnection();
   }
 
-  public <T> T unwrap(Class<T> arg0) throws SQLException
+  public String getSchema() throws SQLException
   {
-    throw new SQLException("Not implemented: unwrap");
+    checkConnection();
+    return null;
+  }
+
+  public void abort(Executor executor) throws SQLException
+  {
+    throw new SQLException("Not implemented: abort(Executor executor)");
+  }
+
+  /**
+   * A local database has no network, the timeout is ignored.
+   * 
+   * @see java.sql.Connection#setNetworkTimeout(java.util.concurrent.Executor, int)
+   */
+  public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException
+  {
+    if (milliseconds < 0) throw new SQLException("Network timeout must not be negative", "", SQLite.SQLITE_MISUSE);
+    checkConnection();
+  }
+
+  public int getNetworkTimeout() throws SQLException
+  {
+    checkConnection();
+    return 0;
   }
 
   public NClob createNClob() throws SQLException
@@ -422,4 +1042,87 @@ public class SQLiteConnection implements Connection
     throw new SQLClientInfoException();
   }
 
+  // ***************************************************************************
+  private class TimeoutCallback implements SQLite.ProgressCallback
+  {
+    public int callback(Pointer data)
+    {
+      // Runs on the thread that is stepping; the deadline is written before timeoutArmed
+      return timeoutArmed && System.nanoTime() - timeoutDeadline > 0 ? 1 : 0;
+    }
+  }
+
+  // ***************************************************************************
+  private class BusyCallback implements SQLite.BusyCallback
+  {
+    private final SQLiteBusyHandler handler;
+    // Time slept for the operation being retried
+    private long                    waitedNanos;
+
+    BusyCallback(SQLiteBusyHandler pHandler)
+    {
+      super();
+      handler = pHandler;
+    }
+
+    public int callback(Pointer data, int count)
+    {
+      if (count == 0) waitedNanos = 0;
+      long delay;
+      try {
+        delay = handler.delay(count, waitedNanos / 1000000);
+      } catch (RuntimeException e) {
+        // Must not unwind through SQLite
+        return 0;
+      }
+      if (delay < 0) return 0;
+      long start = System.nanoTime();
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return 0;
+      }
+      long slept = System.nanoTime() - start;
+      waitedNanos += slept;
+      busyWaitNanos += slept;
+      busyRetries++;
+      return 1;
+    }
+  }
+
+  // ***************************************************************************
+  private static class SQLiteSavepoint implements Savepoint
+  {
+    final int    id;
+    final String name;
+    final String sqlName;
+
+    SQLiteSavepoint(int pId, String pName, String pSqlName)
+    {
+      super();
+      id = pId;
+      name = pName;
+      sqlName = pSqlName;
+    }
+
+    public int getSavepointId() throws SQLException
+    {
+      if (name != null) throw new SQLException("Named savepoint has no id", "", SQLite.SQLITE_MISUSE);
+      return id;
+    }
+
+    public String getSavepointName() throws SQLException
+    {
+      if (name == null) throw new SQLException("Unnamed savepoint has no name", "", SQLite.SQLITE_MISUSE);
+      return name;
+    }
+
+    @Override
+    public String toString()
+    {
+      return name != null ? name : "Savepoint " + id;
+    }
+  }
+
 }
@@ -0,0 +1,574 @@
+package org.sqlite.jdbc;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.LinkedList;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+import javax.sql.ConnectionPoolDataSource;
+import javax.sql.DataSource;
+import javax.sql.PooledConnection;
+
+import org.sqlite.SQLite;
+
+/**
+ * A DataSource with a bounded pool of warm connections to one database. Each physical connection is opened once, gets
+ * the configured {@link SQLiteConfig} settings, and is then lent out through {@link SQLitePooledConnection} logical
+ * connections. Idle connections are reused most recently returned first, so their statement caches stay hot.
+ * <p>
+ * When all {@link #setMaxPoolSize(int) maxPoolSize} connections are in use, getConnection waits for one to be returned,
+ * for at most {@link #setLoginTimeout(int) loginTimeout} seconds if that is set. Waiting borrowers are served first
+ * come, first served. As a {@link ConnectionPoolDataSource} it also hands out unpooled {@link PooledConnection}s to an
+ * external pool manager.
+ * <p>
+ * With {@link #setReadOnlyPoolSize(int) readOnlyPoolSize} set, the pool is split for a database in WAL mode: one
+ * writer connection, and that many connections opened with SQLITE_OPEN_READONLY, see
+ * {@link #setReadOnlyPoolSize(int)}.
+ *
+ * <pre>
+ * SQLiteDataSource ds = new SQLiteDataSource();
+ * ds.setDatabaseName(&quot;app.db&quot;);
+ * ds.setPragma(&quot;journal_mode&quot;, &quot;WAL&quot;);
+ * Connection c = ds.getConnection();
+ * </pre>
+ */
+public class SQLiteDataSource implements DataSource, ConnectionPoolDataSource
+{
+  private static final String URL_PREFIX = "jdbc:sqlite:";
+
+  private String              url;
+  private int                 maxPoolSize      = 8;
+  private int                 readOnlyPoolSize = 0;
+  private int                 loginTimeout     = 0;
+  private PrintWriter         logWriter;
+  // Under the URL options, which win as they do for Driver.connect
+  private final SQLiteConfig  config           = new SQLiteConfig();
+
+  // Created by the first getConnection, readers only with a readOnlyPoolSize
+  private Pool                writers;
+  private Pool                readers;
+  private boolean             closed           = false;
+
+  public SQLiteDataSource()
+  {
+    super();
+    set(SQLiteConfig.Property.STATEMENT_CACHE_SIZE, "32");
+  }
+
+  // ***************************************************************************
+  // *** Configuration
+  // ***************************************************************************
+  /**
+   * @param pUrl a <code>jdbc:sqlite:</code> URL, with the same options {@link Driver#connect(String, Properties)} takes
+   */
+  public synchronized void setUrl(String pUrl)
+  {
+    url = pUrl;
+  }
+
+  public synchronized String getUrl()
+  {
+    return url;
+  }
+
+  /**
+   * Sets the database file, a shortcut for {@link #setUrl(String)} without options.
+   */
+  public synchronized void setDatabaseName(String databaseName)
+  {
+    url = URL_PREFIX + databaseName;
+  }
+
+  public synchronized String getDatabaseName()
+  {
+    return url != null && url.startsWith(URL_PREFIX) ? url.substring(URL_PREFIX.length()).split("\\?")[0] : null;
+  }
+
+  /**
+   * Sets the maximum number of physical connections, idle or in use. The default is 8. Ignored when a
+   * {@link #setReadOnlyPoolSize(int) readOnlyPoolSize} is set. Can't be changed once connections were handed out.
+   */
+  public synchronized void setMaxPoolSize(int size)
+  {
+    if (size < 1) throw new IllegalArgumentException("Pool size must be positive");
+    checkNotStarted();
+    maxPoolSize = size;
+  }
+
+  public synchronized int getMaxPoolSize()
+  {
+    return maxPoolSize;
+  }
+
+  /**
+   * Splits the pool into a single writer connection and <code>size</code> connections opened with
+   * SQLITE_OPEN_READONLY, 0 (the default) keeps one pool of {@link #setMaxPoolSize(int) maxPoolSize} read-write
+   * connections. The writer puts the database in WAL mode unless a <code>journal_mode</code> pragma is set, here or in
+   * the URL, so readers don't block it.
+   * <p>
+   * A connection from getConnection is then only bound to a physical connection by its first use: if
+   * <code>setReadOnly(true)</code> was called before, it borrows a reader, otherwise the writer. Setting and getting the
+   * auto-commit mode doesn't count as a use, any other call does, getMetaData included, and may wait for the writer.
+   * Writers queue for the writer connection in the order they asked, instead of competing for the file lock.
+   * <p>
+   * Switching the read-only flag of a bound connection outside a transaction returns the physical connection and binds
+   * anew on the next use, keeping the auto-commit mode. The Statements and ResultSets created before the switch are
+   * closed with the physical connection they belong to. Can't be changed once connections were handed out.
+   */
+  public synchronized void setReadOnlyPoolSize(int size)
+  {
+    if (size < 0) throw new IllegalArgumentException("Pool size must not be negative");
+    checkNotStarted();
+    readOnlyPoolSize = size;
+  }
+
+  public synchronized int getReadOnlyPoolSize()
+  {
+    return readOnlyPoolSize;
+  }
+
+  /**
+   * Sets the statement cache size of connections opened from now on, see
+   * {@link SQLiteConnection#setStatementCacheSize(int)}. The default is 32.
+   */
+  public synchronized void setStatementCacheSize(int size)
+  {
+    set(SQLiteConfig.Property.STATEMENT_CACHE_SIZE, String.valueOf(Math.max(size, 0)));
+  }
+
+  public synchronized int getStatementCacheSize()
+  {
+    return config.getInt(SQLiteConfig.Property.STATEMENT_CACHE_SIZE);
+  }
+
+  /**
+   * Memory maps up to <code>bytes</code> of the database in every connection of the pool, see
+   * {@link SQLiteConnection#setMmapSize(long)}. The size is the same for the writer and the readers and is restored when
+   * a borrower changed it, so every borrower reads through the same path. The <code>mmap_size</code> option of the URL
+   * overrides it; unset (-1, the default) leaves it to the URL and the library.
+   *
+   * @throws IllegalStateException if the pool has already handed out connections
+   */
+  public synchronized void setMmapSize(long bytes)
+  {
+    checkNotStarted();
+    set(SQLiteConfig.Property.MMAP_SIZE, bytes >= 0 ? String.valueOf(bytes) : null);
+  }
+
+  public synchronized long getMmapSize()
+  {
+    String value = config.get(SQLiteConfig.Property.MMAP_SIZE);
+    return value != null ? Long.parseLong(value) : -1;
+  }
+
+  /**
+   * Sets one of the pragmas of {@link SQLiteConfig} for every connection opened from now on; a <code>null</code> value
+   * removes it. The URL options override it, and read-only connections skip the pragmas that change the file.
+   * <code>mmap_size</code> is set with {@link #setMmapSize(long)}.
+   *
+   * @throws IllegalArgumentException if <code>name</code> is not a pragma of {@link SQLiteConfig.Property} or the
+   *           value is not valid for it
+   */
+  public synchronized void setPragma(String name, String value)
+  {
+    SQLiteConfig.Property property = SQLiteConfig.Property.forName(name);
+    if (property == null || !property.isPragma()) throw new IllegalArgumentException("Unsupported pragma: " + name);
+    set(property, value);
+  }
+
+  public synchronized String getPragma(String name)
+  {
+    SQLiteConfig.Property property = SQLiteConfig.Property.forName(name);
+    return property != null && property.isPragma() ? config.get(property) : null;
+  }
+
+  /**
+   * @return number of physical connections waiting in the pool
+   */
+  public synchronized int getIdleCount()
+  {
+    return (writers != null ? writers.idleCount() : 0) + (readers != null ? readers.idleCount() : 0);
+  }
+
+  /**
+   * @return number of physical connections opened by the pool, idle or in use
+   */
+  public synchronized int getOpenCount()
+  {
+    return (writers != null ? writers.openCount() : 0) + (readers != null ? readers.openCount() : 0);
+  }
+
+  /**
+   * Closes the idle connections and stops lending. Connections in use are closed when they are returned.
+   */
+  public synchronized void close()
+  {
+    closed = true;
+    if (writers != null) writers.close();
+    if (readers != null) readers.close();
+  }
+
+  // ***************************************************************************
+  // *** DataSource implementation
+  // ***************************************************************************
+  /**
+   * Borrows a connection from the pool; closing it returns it.
+   *
+   * @see javax.sql.DataSource#getConnection()
+   */
+  public Connection getConnection() throws SQLException
+  {
+    Pool pool = pool(false);
+    if (readers == null) return pool.getConnection();
+    return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+        new RoutedConnection());
+  }
+
+  /**
+   * SQLite has no users, the credentials are ignored.
+   *
+   * @see javax.sql.DataSource#getConnection(java.lang.String, java.lang.String)
+   */
+  public Connection getConnection(String username, String password) throws SQLException
+  {
+    return getConnection();
+  }
+
+  // ***************************************************************************
+  // *** ConnectionPoolDataSource implementation
+  // ***************************************************************************
+  /**
+   * Opens a new physical connection which is not part of this pool.
+   *
+   * @see javax.sql.ConnectionPoolDataSource#getPooledConnection()
+   */
+  public PooledConnection getPooledConnection() throws SQLException
+  {
+    return openPooled(false);
+  }
+
+  public PooledConnection getPooledConnection(String user, String password) throws SQLException
+  {
+    return openPooled(false);
+  }
+
+  public synchronized int getLoginTimeout()
+  {
+    return loginTimeout;
+  }
+
+  /**
+   * Sets how long getConnection waits for a connection when the pool is exhausted, 0 to wait without limit.
+   */
+  public synchronized void setLoginTimeout(int seconds)
+  {
+    loginTimeout = Math.max(seconds, 0);
+  }
+
+  public PrintWriter getLogWriter()
+  {
+    return logWriter;
+  }
+
+  public void setLogWriter(PrintWriter out)
+  {
+    logWriter = out;
+  }
+
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException
+  {
+    throw new SQLFeatureNotSupportedException("Not implemented: getParentLogger()");
+  }
+
+  public boolean isWrapperFor(Class<?> iface) throws SQLException
+  {
+    return iface.isInstance(this);
+  }
+
+  public <T> T unwrap(Class<T> iface) throws SQLException
+  {
+    if (!iface.isInstance(this)) throw new SQLException(String.format("Not a wrapper for %s", iface.getName()));
+    return iface.cast(this);
+  }
+
+  // ***************************************************************************
+  // *** Private methods
+  // ***************************************************************************
+  private void checkNotStarted()
+  {
+    if (writers != null) throw new IllegalStateException("The pool has already handed out connections");
+  }
+
+  private void set(SQLiteConfig.Property property, String value)
+  {
+    try {
+      config.set(property, value);
+    } catch (SQLException e) {
+      throw new IllegalArgumentException(e.getMessage(), e);
+    }
+  }
+
+  private synchronized Pool pool(boolean readOnly) throws SQLException
+  {
+    if (closed) throw new SQLException("Data source is closed", "", SQLite.SQLITE_MISUSE);
+    if (writers == null) {
+      if (readOnlyPoolSize == 0) {
+        writers = new Pool(false, maxPoolSize);
+      } else {
+        Pool w = new Pool(false, 1);
+        // Readers can't create the database nor switch it to WAL: have the writer open it first
+        w.getConnection().close();
+        writers = w;
+        readers = new Pool(true, readOnlyPoolSize);
+      }
+    }
+    return readOnly && readers != null ? readers : writers;
+  }
+
+  private SQLitePooledConnection openPooled(boolean readOnly) throws SQLException
+  {
+    String pUrl;
+    Properties settings;
+    boolean split;
+    synchronized (this) {
+      pUrl = url;
+      settings = config.toProperties();
+      split = readOnlyPoolSize > 0;
+    }
+    if (pUrl == null) throw new SQLException("No database set", "", SQLite.SQLITE_MISUSE);
+    if (!pUrl.toLowerCase().startsWith(URL_PREFIX)) throw new SQLException("Not an SQLite URL: " + pUrl, "", SQLite.SQLITE_MISUSE);
+    SQLiteConfig merged = Driver.config(pUrl, settings);
+    if (split && merged.get(SQLiteConfig.Property.JOURNAL_MODE) == null) merged.set(SQLiteConfig.Property.JOURNAL_MODE, "WAL");
+    int flags = readOnly ? SQLite.SQLITE_OPEN_READONLY : SQLite.SQLITE_OPEN_READWRITE | SQLite.SQLITE_OPEN_CREATE;
+    SQLiteConnection conn = Driver.open(pUrl, merged, flags);
+    try {
+      return new SQLitePooledConnection(conn);
+    } catch (SQLException e) {
+      conn.close();
+      throw e;
+    }
+  }
+
+  // ***************************************************************************
+  /**
+   * Physical connections of one kind, read-write or read-only. A fair semaphore holds one permit per connection that
+   * may be lent, so borrowers are served in order and never wait on the pool's lock.
+   */
+  private class Pool implements ConnectionEventListener
+  {
+    private final boolean                            readOnly;
+    private final Semaphore                          permits;
+    private final LinkedList<SQLitePooledConnection> idle      = new LinkedList<SQLitePooledConnection>();
+    private int                                      openCount = 0;
+    private boolean                                  closed    = false;
+
+    Pool(boolean pReadOnly, int size)
+    {
+      super();
+      readOnly = pReadOnly;
+      permits = new Semaphore(size, true);
+    }
+
+    Connection getConnection() throws SQLException
+    {
+      acquire();
+      SQLitePooledConnection pc;
+      try {
+        pc = take();
+      } catch (SQLException e) {
+        permits.release();
+        throw e;
+      }
+      try {
+        return pc.getConnection();
+      } catch (SQLException e) {
+        synchronized (this) {
+          discard(pc);
+        }
+        permits.release();
+        throw e;
+      }
+    }
+
+    synchronized int idleCount()
+    {
+      return idle.size();
+    }
+
+    synchronized int openCount()
+    {
+      return openCount;
+    }
+
+    synchronized void close()
+    {
+      closed = true;
+      for (SQLitePooledConnection pc : idle) discard(pc);
+      idle.clear();
+    }
+
+    public void connectionClosed(ConnectionEvent event)
+    {
+      SQLitePooledConnection pc = (SQLitePooledConnection) event.getSource();
+      synchronized (this) {
+        if (closed) {
+          discard(pc);
+        } else {
+          // Most recently used first, its caches are the warmest
+          idle.addFirst(pc);
+        }
+      }
+      permits.release();
+    }
+
+    public void connectionErrorOccurred(ConnectionEvent event)
+    {
+      SQLitePooledConnection pc = (SQLitePooledConnection) event.getSource();
+      synchronized (this) {
+        idle.remove(pc);
+        discard(pc);
+      }
+      permits.release();
+    }
+
+    private void acquire() throws SQLException
+    {
+      int timeout = getLoginTimeout();
+      try {
+        if (timeout == 0) {
+          permits.acquire();
+        } else if (!permits.tryAcquire(timeout, TimeUnit.SECONDS)) {
+          throw new SQLException(String.format("No connection returned to the pool within %d s", timeout), "", SQLite.SQLITE_BUSY);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SQLException("Interrupted while waiting for a pooled connection", "", SQLite.SQLITE_INTERRUPT);
+      }
+    }
+
+    private SQLitePooledConnection take() throws SQLException
+    {
+      synchronized (this) {
+        if (closed) throw new SQLException("Data source is closed", "", SQLite.SQLITE_MISUSE);
+        while (!idle.isEmpty()) {
+          SQLitePooledConnection pc = idle.removeFirst();
+          if (pc.isIdle()) return pc;
+          discard(pc);
+        }
+        openCount++;
+      }
+      // Opened outside the lock, returning connections need not wait for the file to be opened
+      try {
+        SQLitePooledConnection pc = openPooled(readOnly);
+        pc.addConnectionEventListener(this);
+        return pc;
+      } catch (SQLException e) {
+        synchronized (this) {
+          openCount--;
+        }
+        throw e;
+      }
+    }
+
+    private void discard(SQLitePooledConnection pc)
+    {
+      openCount--;
+      pc.removeConnectionEventListener(this);
+      try {
+        pc.close();
+      } catch (SQLException e) {
+        if (logWriter != null) logWriter.println("Closing a pooled connection failed: " + e.getMessage());
+      }
+    }
+  }
+
+  // ***************************************************************************
+  /**
+   * Logical connection of a split pool, bound to a reader or the writer by its first use.
+   */
+  private class RoutedConnection implements InvocationHandler
+  {
+    private boolean    readOnly   = false;
+    private boolean    autoCommit = true;
+    private boolean    closed     = false;
+    private Connection target;
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+    {
+      String name = method.getName();
+      if (name.equals("close")) {
+        closed = true;
+        release();
+        return null;
+      } else if (name.equals("isClosed")) {
+        return closed;
+      } else if (name.equals("equals")) {
+        return proxy == args[0];
+      } else if (name.equals("hashCode")) {
+        return System.identityHashCode(proxy);
+      } else if (name.equals("toString")) {
+        return String.format("Routed connection over %s%s", target, closed ? " (closed)" : "");
+      } else if (closed) {
+        if (name.equals("isValid")) return false;
+        throw new SQLException("Connection is closed", "", SQLite.SQLITE_MISUSE);
+      } else if (name.equals("isReadOnly")) {
+        return readOnly;
+      } else if (name.equals("setReadOnly")) {
+        boolean value = (Boolean) args[0];
+        if (value != readOnly && target != null) {
+          // Manual-commit mode alone holds no transaction, it only begins with the first statement
+          if (SQLite.get_autocommit(target.unwrap(SQLiteConnection.class).handle) == 0) {
+            throw new SQLException("Can't switch between reader and writer inside a transaction", "", SQLite.SQLITE_MISUSE);
+          }
+          // Kept for the next physical connection, the pool resets this one
+          autoCommit = target.getAutoCommit();
+          release();
+        }
+        readOnly = value;
+        return null;
+      } else if (target == null && name.equals("getAutoCommit")) {
+        return autoCommit;
+      } else if (target == null && name.equals("setAutoCommit")) {
+        autoCommit = (Boolean) args[0];
+        return null;
+      }
+      if (target == null) bind();
+      try {
+        return SQLitePooledConnection.wrap(method.invoke(target, args), method, (Connection) proxy);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+
+    private void bind() throws SQLException
+    {
+      Connection c = pool(readOnly).getConnection();
+      try {
+        if (!autoCommit) c.setAutoCommit(false);
+      } catch (SQLException e) {
+        c.close();
+        throw e;
+      }
+      target = c;
+    }
+
+    private void release() throws SQLException
+    {
+      Connection c = target;
+      target = null;
+      if (c != null) c.close();
+    }
+  }
+
+}
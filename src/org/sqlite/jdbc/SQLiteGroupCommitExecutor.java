@@ -0,0 +1,310 @@
+package org.sqlite.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.sqlite.SQLite;
+
+/**
+ * Coalesces small writes from many threads into few transactions. Writes are queued by {@link #submit(String, Object...)}
+ * and executed by a dedicated thread, which commits everything it finds in the queue as one
+ * <code>BEGIN IMMEDIATE ... COMMIT</code>, so a single fsync covers the whole batch. A batch is closed when it holds
+ * <code>maxBatchSize</code> writes or <code>maxDelay</code> has passed since its first write was taken.
+ * <p>
+ * Every write runs in its own savepoint: a write that fails is rolled back alone and only its future fails, the rest of
+ * the batch is committed. Futures of successful writes complete with the update count once the batch is committed.
+ * <p>
+ * The executor owns the connection until {@link #close()}: nothing else may use it in the meantime. The connection has
+ * to be in auto-commit mode.
+ */
+public class SQLiteGroupCommitExecutor
+{
+  private static final int   STATEMENTS_RETAINED = 32;
+  // Queued after the last write by close()
+  private static final Write END                 = new Write(null, null);
+
+  private final SQLiteConnection               connection;
+  private final int                            maxBatchSize;
+  private final long                           maxDelayNanos;
+  private final BlockingQueue<Write>           queue;
+  private final Thread                         writer;
+  private volatile boolean                     closed     = false;
+  private volatile long                        batchCount = 0;
+  private volatile long                        writeCount = 0;
+  private final Map<String, PreparedStatement> statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest)
+    {
+      if (size() <= STATEMENTS_RETAINED) return false;
+      closeQuietly(eldest.getValue());
+      return true;
+    }
+  };
+
+  /**
+   * Starts the writer thread.
+   *
+   * @param maxBatchSize maximum number of writes per transaction
+   * @param maxDelay how long, in milliseconds, a batch may wait for more writes after its first one; 0 commits what is
+   *          queued right away
+   */
+  public SQLiteGroupCommitExecutor(SQLiteConnection pConnection, int maxBatchSize, long maxDelay) throws SQLException
+  {
+    super();
+    if (maxBatchSize < 1 || maxDelay < 0) throw new IllegalArgumentException("Invalid batch size or delay");
+    pConnection.checkConnection();
+    if (!pConnection.getAutoCommit()) throw new SQLException("Connection is in a transaction", "", SQLite.SQLITE_MISUSE);
+    connection = pConnection;
+    this.maxBatchSize = maxBatchSize;
+    maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelay);
+    // Bounded, so that producers faster than the disk are slowed down instead of filling the heap
+    queue = new LinkedBlockingQueue<Write>(maxBatchSize * 4);
+    writer = new Thread("SQLite group commit") {
+      @Override
+      public void run()
+      {
+        drain();
+      }
+    };
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  // ***************************************************************************
+  // *** Public methods
+  // ***************************************************************************
+  /**
+   * Queues a write, blocking while the queue is full.
+   *
+   * @param sql a single INSERT, UPDATE, DELETE or other statement returning no rows
+   * @param params parameter values, bound with <code>setObject</code>
+   * @return completes with the update count once the write is committed, or exceptionally with the SQLException that
+   *         rolled it back
+   * @throws RejectedExecutionException if the executor is closed
+   */
+  public CompletableFuture<Integer> submit(String sql, Object... params)
+  {
+    if (closed) throw new RejectedExecutionException("Executor is closed");
+    Write w = new Write(sql, params);
+    try {
+      queue.put(w);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      w.result.completeExceptionally(e);
+      return w.result;
+    }
+    // Closed while this write was queued: the writer may be gone already, and the last rejectQueued done with. If the
+    // write is still in the queue, it is failed here, otherwise the writer or rejectQueued has taken it.
+    if (closed && queue.remove(w)) w.result.completeExceptionally(new SQLException("Executor is closed", "", SQLite.SQLITE_MISUSE));
+    return w.result;
+  }
+
+  /**
+   * Commits the writes still queued and stops the writer thread. The connection is left open. An executor whose writer
+   * thread failed unexpectedly is closed already.
+   */
+  public void close()
+  {
+    boolean interrupted = false;
+    if (!closed) {
+      closed = true;
+      while (true) {
+        try {
+          queue.put(END);
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    // Also after a failure, so that the writer thread is done with the connection on return; a future callback
+    // running on the writer thread can't wait for itself
+    while (Thread.currentThread() != writer) {
+      try {
+        writer.join();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    // A submit racing with close may have queued behind END
+    rejectQueued();
+    if (interrupted) Thread.currentThread().interrupt();
+  }
+
+  /**
+   * @return number of transactions committed so far
+   */
+  public long getBatchCount()
+  {
+    return batchCount;
+  }
+
+  /**
+   * @return number of writes committed so far
+   */
+  public long getWriteCount()
+  {
+    return writeCount;
+  }
+
+  // ***************************************************************************
+  // *** Writer thread
+  // ***************************************************************************
+  private void drain()
+  {
+    List<Write> batch = new ArrayList<Write>(maxBatchSize);
+    boolean end = false;
+    try {
+      while (!end) {
+        Write first = queue.take();
+        if (first == END) break;
+        batch.add(first);
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (batch.size() < maxBatchSize) {
+          Write w = queue.poll();
+          if (w == null) {
+            long wait = deadline - System.nanoTime();
+            if (wait <= 0 || (w = queue.poll(wait, TimeUnit.NANOSECONDS)) == null) break;
+          }
+          if (w == END) {
+            end = true;
+            break;
+          }
+          batch.add(w);
+        }
+        commit(batch);
+        batch.clear();
+      }
+    } catch (InterruptedException e) {
+      // Not expected: the thread is private and only stopped through close()
+      abort(batch, new SQLException("Group commit interrupted", "", SQLite.SQLITE_INTERRUPT));
+    } catch (Throwable e) {
+      // A bug or an Error: the state of the batch is unknown, its transaction is rolled back
+      abort(batch, new SQLException("Group commit failed", "", SQLite.SQLITE_ERROR, e));
+      if (e instanceof Error) throw (Error) e;
+    } finally {
+      for (PreparedStatement ps : statements.values()) closeQuietly(ps);
+      statements.clear();
+      rejectQueued();
+    }
+  }
+
+  /**
+   * Stops taking writes after the writer thread failed: rolls back the open transaction and fails the writes of the
+   * batch that are not completed yet.
+   */
+  private void abort(List<Write> batch, SQLException e)
+  {
+    closed = true;
+    if (SQLite.get_autocommit(connection.handle) == 0) SQLite.exec(connection.handle, "ROLLBACK;", null, null, null);
+    fail(batch, e);
+  }
+
+  private void rejectQueued()
+  {
+    Write w;
+    while ((w = queue.poll()) != null) {
+      if (w != END) w.result.completeExceptionally(new SQLException("Executor is closed", "", SQLite.SQLITE_MISUSE));
+    }
+  }
+
+  private void commit(List<Write> batch)
+  {
+    try {
+      exec("BEGIN IMMEDIATE;");
+    } catch (SQLException e) {
+      fail(batch, e);
+      return;
+    }
+    List<Write> done = new ArrayList<Write>(batch.size());
+    for (Write w : batch) {
+      try {
+        exec("SAVEPOINT GROUP_WRITE;");
+      } catch (SQLException e) {
+        w.result.completeExceptionally(e);
+        continue;
+      }
+      try {
+        PreparedStatement ps = statement(w.sql);
+        for (int i = 0; i < w.params.length; i++) ps.setObject(i + 1, w.params[i]);
+        w.count = ps.executeUpdate();
+        exec("RELEASE GROUP_WRITE;");
+        done.add(w);
+      } catch (SQLException e) {
+        try {
+          exec("ROLLBACK TO GROUP_WRITE; RELEASE GROUP_WRITE;");
+        } catch (SQLException ignore) {
+          // The write is reported below, the batch fails on COMMIT if the transaction is broken
+        }
+        w.result.completeExceptionally(e);
+      }
+    }
+    try {
+      exec("COMMIT;");
+    } catch (SQLException e) {
+      if (SQLite.get_autocommit(connection.handle) == 0) SQLite.exec(connection.handle, "ROLLBACK;", null, null, null);
+      fail(done, e);
+      return;
+    }
+    batchCount++;
+    writeCount += done.size();
+    for (Write w : done) w.result.complete(w.count);
+  }
+
+  private PreparedStatement statement(String sql) throws SQLException
+  {
+    PreparedStatement ps = statements.get(sql);
+    if (ps == null) {
+      ps = connection.prepareStatement(sql);
+      statements.put(sql, ps);
+    }
+    return ps;
+  }
+
+  private void exec(String sql) throws SQLException
+  {
+    connection.check(SQLite.exec(connection.handle, sql, null, null, null));
+  }
+
+  private static void fail(List<Write> writes, SQLException e)
+  {
+    for (Write w : writes) w.result.completeExceptionally(e);
+  }
+
+  private static void closeQuietly(PreparedStatement ps)
+  {
+    try {
+      ps.close();
+    } catch (SQLException e) {
+      // Finalized anyway
+    }
+  }
+
+  // ***************************************************************************
+  private static class Write
+  {
+    final String                     sql;
+    final Object[]                   params;
+    final CompletableFuture<Integer> result = new CompletableFuture<Integer>();
+    int                              count;
+
+    Write(String pSql, Object[] pParams)
+    {
+      sql = pSql;
+      params = pParams != null ? pParams : new Object[0];
+    }
+  }
+
+}
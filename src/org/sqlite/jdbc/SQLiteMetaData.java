@@ -25,7 +25,6 @@ import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -249,7 +248,7 @@ public class SQLiteMetaData implements DatabaseMetaData
 
   public Connection getConnection() throws SQLException
   {
-    throw new SQLException("Not implemented: " + trace(Thread.currentThread().getStackTrace(), 2));
+    return connection;
   }
 
   public ResultSet getCrossReference(String primaryCatalog, String primarySchema, String primaryTable, String foreignCatalog, String foreignSchema, String foreignTable) throws SQLException
@@ -854,7 +853,7 @@ public class SQLiteMetaData implements DatabaseMetaData
 
   public boolean supportsSavepoints() throws SQLException
   {
-    throw new SQLException("Not implemented: " + trace(Thread.currentThread().getStackTrace(), 2));
+    return true;
   }
 
   public boolean supportsSchemasInDataManipulation() throws SQLException
@@ -1002,6 +1001,17 @@ public class SQLiteMetaData implements DatabaseMetaData
     throw new SQLException("Not implemented: getRowIdLifetime()");
   }
 
+  public ResultSet getPseudoColumns(String catalog, String schemaPattern, String tableNamePattern,
+      String columnNamePattern) throws SQLException
+  {
+    throw new SQLException("Not implemented: getPseudoColumns(String catalog, String schemaPattern, String tableNamePattern, String columnNamePattern)");
+  }
+
+  public boolean generatedKeyAlwaysReturned() throws SQLException
+  {
+    return false;
+  }
+
   //***************************************************************************
   //*** private / protected methods
   //***************************************************************************
@@ -1043,7 +1053,7 @@ class ListResultSet implements ResultSet, ResultSetMetaData
 
   private List<Object[]>         records;
   private List<ColumnDef>        columnDefs;
-  private Map<String, ColumnDef> columnNameMap;
+  private ColumnNameIndex        columnNameIndex;
   private int                    currentRow;
   private boolean                wasNull;
 
@@ -1053,10 +1063,11 @@ class ListResultSet implements ResultSet, ResultSetMetaData
     records = pRecords;
     currentRow = -1;
     columnDefs = pColumnDefs;
-    columnNameMap = new HashMap<String, ColumnDef>();
+    String[] names = new String[pColumnDefs.size()];
     for (int i = 0; i < pColumnDefs.size(); i++) {
-      columnNameMap.put(columnDefs.get(i).name.toLowerCase(), columnDefs.get(i));
+      names[i] = columnDefs.get(i).name;
     }
+    columnNameIndex = new ColumnNameIndex(names);
   }
 
   // ***************************************************************************
@@ -1076,9 +1087,9 @@ class ListResultSet implements ResultSet, ResultSetMetaData
 
   public int findColumn(String columnName) throws SQLException
   {
-    ColumnDef cd = columnNameMap.get(columnName.toLowerCase());
-    if (cd == null) throw new SQLException("No such column");
-    return cd.index;
+    int i = columnNameIndex.find(columnName);
+    if (i < 0) throw new SQLException("No such column");
+    return columnDefs.get(i).index;
   }
 
   public boolean wasNull() throws SQLException
@@ -2114,6 +2125,15 @@ class ListResultSet implements ResultSet, ResultSetMetaData
     throw new SQLException("Not implemented: " + trace(Thread.currentThread().getStackTrace(), 2));
   }
 
+  public <T> T getObject(int columnIndex, Class<T> type) throws SQLException
+  {
+    throw new SQLException("Not implemented: " + trace(Thread.currentThread().getStackTrace(), 2));
+  }
+
+  public <T> T getObject(String columnLabel, Class<T> type) throws SQLException
+  {
+    throw new SQLException("Not implemented: " + trace(Thread.currentThread().getStackTrace(), 2));
+  }
 
   public boolean isWrapperFor(Class<?> iface) throws SQLException
   {
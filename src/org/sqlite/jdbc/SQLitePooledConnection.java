@@ -0,0 +1,248 @@
+package org.sqlite.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+import javax.sql.PooledConnection;
+import javax.sql.StatementEventListener;
+
+import org.sqlite.SQLite;
+
+/**
+ * A physical {@link SQLiteConnection} handed out through short-lived logical connections. Closing a logical connection
+ * closes the statements created through it, rolls back a transaction left open and notifies the listeners, the
+ * physical connection and its statement cache stay open for the next borrower.
+ * <p>
+ * A logical connection is a proxy, and so are the statements and metadata created through it: their
+ * <code>getConnection()</code> returns the logical connection. Only <code>unwrap</code> gives access to the physical
+ * connection and statements.
+ *
+ * @see SQLiteDataSource
+ */
+public class SQLitePooledConnection implements PooledConnection
+{
+  private SQLiteConnection                       physical;
+  private final boolean                          autoCommit;
+  private final SQLiteConnection.TransactionMode transactionMode;
+  private final long                             mmapSize;
+  private LogicalConnection                      current;
+  private final List<ConnectionEventListener>    listeners = new ArrayList<ConnectionEventListener>();
+
+  SQLitePooledConnection(SQLiteConnection pPhysical) throws SQLException
+  {
+    super();
+    physical = pPhysical;
+    autoCommit = pPhysical.getAutoCommit();
+    transactionMode = pPhysical.getTransactionMode();
+    mmapSize = pPhysical.mmapSize();
+  }
+
+  // ***************************************************************************
+  // *** PooledConnection implementation
+  // ***************************************************************************
+  /**
+   * Opens a new logical connection, closing the previous one if it is still open.
+   *
+   * @see javax.sql.PooledConnection#getConnection()
+   */
+  public synchronized Connection getConnection() throws SQLException
+  {
+    if (physical == null) throw new SQLException("Pooled connection is closed", "", SQLite.SQLITE_MISUSE);
+    if (current != null) closeLogical(current, false);
+    current = new LogicalConnection();
+    return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, current);
+  }
+
+  public synchronized void close() throws SQLException
+  {
+    if (physical == null) return;
+    if (current != null) current.closed = true;
+    current = null;
+    physical.close();
+    physical = null;
+  }
+
+  public synchronized void addConnectionEventListener(ConnectionEventListener listener)
+  {
+    listeners.add(listener);
+  }
+
+  public synchronized void removeConnectionEventListener(ConnectionEventListener listener)
+  {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Statement events are not reported: the physical connection caches its prepared statements itself, see
+   * {@link SQLiteConnection#setStatementCacheSize(int)}.
+   */
+  public void addStatementEventListener(StatementEventListener listener)
+  {
+  }
+
+  public void removeStatementEventListener(StatementEventListener listener)
+  {
+  }
+
+  // ***************************************************************************
+  // *** Package methods
+  // ***************************************************************************
+  /**
+   * @return <code>true</code> if the physical connection is open and no logical connection is using it
+   */
+  synchronized boolean isIdle() throws SQLException
+  {
+    return physical != null && current == null && physical.isValid(0);
+  }
+
+  /**
+   * Wraps a Statement or DatabaseMetaData returned by <code>method</code> of the physical connection, so that its
+   * <code>getConnection()</code> returns <code>logical</code>. Any other result is returned as it is.
+   */
+  static Object wrap(Object result, Method method, Connection logical)
+  {
+    Class<?> type = method.getReturnType();
+    if (!(result instanceof Statement || result instanceof DatabaseMetaData) || !type.isInterface()) return result;
+    return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new LogicalChild(result, logical));
+  }
+
+  // ***************************************************************************
+  // *** Private methods
+  // ***************************************************************************
+  private synchronized void closeLogical(LogicalConnection logical, boolean notify) throws SQLException
+  {
+    if (logical.closed) return;
+    logical.closed = true;
+    if (logical == current) current = null;
+    SQLException error = null;
+    for (Statement s : logical.statements.toArray(new Statement[0])) {
+      try {
+        s.close();
+      } catch (SQLException e) {
+        if (error == null) error = e;
+      }
+    }
+    logical.statements.clear();
+    try {
+      physical.reset(autoCommit, transactionMode, mmapSize);
+    } catch (SQLException e) {
+      if (error == null) error = e;
+    }
+    if (notify) {
+      ConnectionEvent event = new ConnectionEvent(this, error);
+      for (ConnectionEventListener l : listeners.toArray(new ConnectionEventListener[0])) {
+        if (error == null) {
+          l.connectionClosed(event);
+        } else {
+          l.connectionErrorOccurred(event);
+        }
+      }
+    }
+    if (error != null) throw error;
+  }
+
+  private void fireError(SQLException e)
+  {
+    ConnectionEvent event = new ConnectionEvent(this, e);
+    for (ConnectionEventListener l : listeners.toArray(new ConnectionEventListener[0])) l.connectionErrorOccurred(event);
+  }
+
+  /**
+   * @return <code>true</code> for errors after which the physical connection should not be reused
+   */
+  private static boolean isFatal(SQLException e)
+  {
+    switch (e.getErrorCode()) {
+      case SQLite.SQLITE_IOERR:
+      case SQLite.SQLITE_CORRUPT:
+      case SQLite.SQLITE_NOTADB:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  // ***************************************************************************
+  private class LogicalConnection implements InvocationHandler
+  {
+    boolean              closed;
+    // Weak, so that statements the borrower closes and drops don't pile up while the connection is held
+    final Set<Statement> statements = Collections.newSetFromMap(new WeakHashMap<Statement, Boolean>());
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+    {
+      String name = method.getName();
+      if (name.equals("close")) {
+        closeLogical(this, true);
+        return null;
+      } else if (name.equals("isClosed")) {
+        return closed;
+      } else if (name.equals("equals")) {
+        return proxy == args[0];
+      } else if (name.equals("hashCode")) {
+        return System.identityHashCode(proxy);
+      } else if (name.equals("toString")) {
+        return String.format("Logical connection over %s%s", physical, closed ? " (closed)" : "");
+      } else if (closed) {
+        if (name.equals("isValid")) return false;
+        throw new SQLException("Connection is closed", "", SQLite.SQLITE_MISUSE);
+      }
+      try {
+        Object result = method.invoke(physical, args);
+        if (result instanceof Statement) statements.add((Statement) result);
+        return wrap(result, method, (Connection) proxy);
+      } catch (InvocationTargetException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof SQLException && isFatal((SQLException) cause)) fireError((SQLException) cause);
+        throw cause;
+      }
+    }
+  }
+
+  // ***************************************************************************
+  /**
+   * A statement or metadata object of the physical connection, as seen through a logical connection.
+   */
+  private static class LogicalChild implements InvocationHandler
+  {
+    private final Object     target;
+    private final Connection connection;
+
+    LogicalChild(Object pTarget, Connection pConnection)
+    {
+      target = pTarget;
+      connection = pConnection;
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+    {
+      String name = method.getName();
+      if (name.equals("getConnection") && method.getParameterTypes().length == 0) {
+        return connection;
+      } else if (name.equals("equals")) {
+        return proxy == args[0];
+      } else if (name.equals("hashCode")) {
+        return System.identityHashCode(proxy);
+      }
+      try {
+        return method.invoke(target, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+  }
+
+}
@@ -1,9 +1,15 @@
 package org.sqlite.jdbc;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.math.BigDecimal;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.sql.Array;
 import java.sql.Blob;
 import java.sql.Clob;
@@ -20,24 +26,43 @@ import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.sql.rowset.serial.SerialBlob;
+
 import org.sqlite.SQLite;
 
 import com.sun.jna.Pointer;
 
 public class SQLiteResultSet implements ResultSet,ResultSetMetaData
 {
+  private static final Charset UTF8 = Charset.forName("UTF-8");
   
   private SQLiteStatement statement;
   private int lastResult;
   private List<ColumnDef> columnDefs;
-  private Map<String,ColumnDef> columnNameMap;
+  private ColumnNameIndex columnNameIndex;
   private boolean wasNull;
   private int currentRow;
+  private byte[] textBytes;
+  private char[] textChars;
+  private ByteBuffer textByteBuffer;
+  private CharBuffer textCharBuffer;
+  private CharsetDecoder textDecoder;
+  private int fetchSize;
+  private RowBuffer rows;
+  private int bufferRow;
+  private long rowGeneration;
+  private int[] columnTypes;
+  private int[] rowidColumns;
+  private long[] columnTypeGenerations;
+  // Times the value of a column was read as text, which may convert it in place and free the memory read before
+  private int[] columnTextReads;
+  // "SELECT ?", converts buffered values read as another storage class
+  private SQLiteStatement conversion;
   
 
   public SQLiteResultSet(SQLiteStatement pStatement)
@@ -47,13 +72,20 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
     lastResult = SQLite.SQLITE_OK;
     currentRow = 0;
     wasNull = false;
+    fetchSize = pStatement.fetchSize;
     columnDefs = new ArrayList<ColumnDef>();
-    columnNameMap = new HashMap<String,ColumnDef>();
-    for (int i = 0; i < SQLite.column_count(statement.stmt); i++) {
+    int columnCount = SQLite.column_count(statement.stmt);
+    String[] names = new String[columnCount];
+    for (int i = 0; i < columnCount; i++) {
       ColumnDef cd = new ColumnDef(i + 1,SQLite.column_name(statement.stmt,i).toString());
       columnDefs.add(i,cd);
-      columnNameMap.put(cd.name.toLowerCase(),cd);
+      names[i] = cd.name;
     }
+    columnNameIndex = new ColumnNameIndex(names);
+    rowGeneration = 1;
+    columnTypes = new int[columnDefs.size()];
+    columnTypeGenerations = new long[columnDefs.size()];
+    columnTextReads = new int[columnDefs.size()];
   }
 
   // ***************************************************************************
@@ -61,24 +93,64 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
   // ***************************************************************************
   public void close() throws SQLException
   {
+    if (statement != null) statement.connection.removeTimeout();
     statement = null;
+    if (conversion != null) {
+      conversion.close();
+      conversion = null;
+    }
   }
 
   public boolean next() throws SQLException
   {
     checkIfClosed();
+    rowGeneration++;
+    if (isBuffered()) {
+      if (++bufferRow < rows.size()) {
+        currentRow++;
+        return true;
+      }
+      rows.clear();
+      // A step that failed behind buffered rows is reported once they have been consumed
+      if (lastResult != SQLite.SQLITE_ROW && lastResult != SQLite.SQLITE_DONE) {
+        currentRow = 0;
+        statement.connection.check(lastResult);
+      }
+    }
     if (lastResult == SQLite.SQLITE_ROW || lastResult == SQLite.SQLITE_OK) {
-      statement.connection.check(lastResult = SQLite.step(statement.stmt));
+      if (fetchSize > 1) {
+        fetchRows();
+        if (rows.size() > 0) {
+          currentRow++;
+          return true;
+        }
+        statement.connection.check(lastResult);
+      } else {
+        statement.connection.check(lastResult = statement.step());
+      }
       currentRow = (lastResult == SQLite.SQLITE_ROW) ? currentRow + 1 : 0;
+    } else {
+      // Past the last buffered row
+      currentRow = 0;
     }
+    if (lastResult != SQLite.SQLITE_ROW) statement.connection.removeTimeout();
     return lastResult == SQLite.SQLITE_ROW;
   }
 
+  /**
+   * @return the number of the current row, 0 before the first and after the last row
+   */
+  public int getRow() throws SQLException
+  {
+    checkIfClosed();
+    return currentRow;
+  }
+
   public int findColumn(String columnName) throws SQLException
   {
-   ColumnDef cd = columnNameMap.get(columnName.toLowerCase());
-   if (cd == null) throw new SQLException("No such column");
-   return cd.index;
+   int i = columnNameIndex.find(columnName);
+   if (i < 0) throw new SQLException("No such column");
+   return i + 1;
   }
   
   public boolean wasNull() throws SQLException
@@ -89,8 +161,9 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
   public int getInt(int columnIndex) throws SQLException
   {
     checkIfClosed();
-    wasNull = (SQLite.column_type(statement.stmt, columnIndex - 1) == SQLite.SQLITE_NULL);
-    return SQLite.column_int(statement.stmt,columnIndex - 1);
+    int result = columnInt(columnIndex - 1);
+    wasNull = (result == 0 && columnType(columnIndex - 1) == SQLite.SQLITE_NULL);
+    return result;
   }
 
   public int getInt(String columnName) throws SQLException
@@ -101,8 +174,9 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
   public long getLong(int columnIndex) throws SQLException
   {
     checkIfClosed();
-    wasNull = (SQLite.column_type(statement.stmt, columnIndex - 1) == SQLite.SQLITE_NULL);
-    return SQLite.column_int64(statement.stmt, columnIndex - 1);
+    long result = columnLong(columnIndex - 1);
+    wasNull = (result == 0 && columnType(columnIndex - 1) == SQLite.SQLITE_NULL);
+    return result;
   }
 
   public long getLong(String columnName) throws SQLException
@@ -123,8 +197,9 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
   public double getDouble(int columnIndex) throws SQLException
   {
     checkIfClosed();
-    wasNull = (SQLite.column_type(statement.stmt, columnIndex - 1) == SQLite.SQLITE_NULL);
-    return SQLite.column_double(statement.stmt, columnIndex - 1);
+    double result = columnDouble(columnIndex - 1);
+    wasNull = (result == 0 && columnType(columnIndex - 1) == SQLite.SQLITE_NULL);
+    return result;
   }
 
   public double getDouble(String columnName) throws SQLException
@@ -145,14 +220,8 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
   public byte[] getBytes(int columnIndex) throws SQLException
   {
     checkIfClosed();
-    wasNull = (SQLite.column_type(statement.stmt, columnIndex - 1) == SQLite.SQLITE_NULL);
-    if (wasNull) {
-      return null;
-    }
-    Pointer data = SQLite.column_blob(statement.stmt, columnIndex - 1);
-    int dataSize = SQLite.column_bytes(statement.stmt,columnIndex - 1);
-    byte[] result = new byte[dataSize];
-    data.read(0, result,0,dataSize);
+    byte[] result = columnBytes(columnIndex - 1);
+    wasNull = (result == null);
     return result;
   }
 
@@ -161,11 +230,86 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
     return getBytes(findColumn(columnName));
   }
 
+  /**
+   * Streams the value without copying it first, see {@link #getByteBuffer(int)}. The stream fails with an IOException
+   * once the result set has moved to another row or has been closed, or once the column has been read as a String,
+   * which may convert the value and free the memory the stream reads.
+   */
+  public InputStream getBinaryStream(int columnIndex) throws SQLException
+  {
+    ByteBuffer data = getByteBuffer(columnIndex);
+    return data == null ? null : new ColumnInputStream(data, columnIndex - 1);
+  }
+
+  public InputStream getBinaryStream(String columnName) throws SQLException
+  {
+    return getBinaryStream(findColumn(columnName));
+  }
+
+  /**
+   * The value as a read-only view, without copying it to the heap. Row at a time, the view is a direct buffer over the
+   * memory SQLite holds for the current row: it is only valid until the next call of {@link #next()} or
+   * {@link #close()}, or until the column is read as a String, and must not be read after that. Reachable through <code>unwrap(SQLiteResultSet.class)</code>.
+   * 
+   * @return the view or <code>null</code> for SQL NULL
+   */
+  public ByteBuffer getByteBuffer(int columnIndex) throws SQLException
+  {
+    checkIfClosed();
+    ByteBuffer result;
+    if (isBuffered()) {
+      if (rows.type(bufferRow, columnIndex - 1) == SQLite.SQLITE_BLOB) {
+        result = ByteBuffer.wrap((byte[]) rows.getObject(bufferRow, columnIndex - 1));
+      } else {
+        byte[] bytes = columnBytes(columnIndex - 1);
+        result = bytes != null ? ByteBuffer.wrap(bytes) : null;
+      }
+    } else {
+      Pointer data = SQLite.column_blob(statement.stmt, columnIndex - 1);
+      if (data != null) {
+        result = data.getByteBuffer(0, SQLite.column_bytes(statement.stmt, columnIndex - 1));
+      } else {
+        // No pointer for NULL and for an empty value
+        result = columnType(columnIndex - 1) == SQLite.SQLITE_NULL ? null : ByteBuffer.allocate(0);
+      }
+    }
+    wasNull = (result == null);
+    return wasNull ? null : result.asReadOnlyBuffer();
+  }
+
+  public ByteBuffer getByteBuffer(String columnName) throws SQLException
+  {
+    return getByteBuffer(findColumn(columnName));
+  }
+
+  /**
+   * When the rowid of the row is selected as well, either as rowid or as the INTEGER PRIMARY KEY of the same table, the
+   * value stays in the database and is read in place through a read-only {@link SQLiteBlob}; free it when done. Values
+   * without a rowid, such as expressions, are copied into memory instead.
+   */
+  public Blob getBlob(int columnIndex) throws SQLException
+  {
+    checkIfClosed();
+    wasNull = (columnType(columnIndex - 1) == SQLite.SQLITE_NULL);
+    if (wasNull) return null;
+    int rowidColumn = findRowidColumn(columnIndex - 1);
+    if (rowidColumn < 0 || columnType(rowidColumn) != SQLite.SQLITE_INTEGER) return new SerialBlob(columnBytes(columnIndex - 1));
+    Pointer stmt = statement.stmt;
+    return statement.connection.openBlob(SQLite.column_database_name(stmt, columnIndex - 1), SQLite.column_table_name(stmt,
+        columnIndex - 1), SQLite.column_origin_name(stmt, columnIndex - 1), columnLong(rowidColumn), false);
+  }
+
+  public Blob getBlob(String colName) throws SQLException
+  {
+    return getBlob(findColumn(colName));
+  }
+
   public String getString(int columnIndex) throws SQLException
   {
     checkIfClosed();
-    wasNull = (SQLite.column_type(statement.stmt, columnIndex - 1) == SQLite.SQLITE_NULL);
-    return SQLite.column_text(statement.stmt, columnIndex - 1);
+    String result = columnText(columnIndex - 1);
+    wasNull = (result == null);
+    return result;
   }
 
   public String getString(String columnName) throws SQLException
@@ -177,8 +321,9 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
   public Date getDate(int columnIndex) throws SQLException
   {
     checkIfClosed();
-    wasNull = (SQLite.column_type(statement.stmt, columnIndex - 1) == SQLite.SQLITE_NULL);
-    return wasNull?null:new Date(SQLite.column_int64(statement.stmt, columnIndex - 1));
+    long value = columnLong(columnIndex - 1);
+    wasNull = (value == 0 && columnType(columnIndex - 1) == SQLite.SQLITE_NULL);
+    return wasNull?null:new Date(value);
   }
 
   public Date getDate(String columnName) throws SQLException
@@ -192,11 +337,12 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
       return getDate(columnIndex);
     }
     checkIfClosed();
-    wasNull = (SQLite.column_type(statement.stmt, columnIndex - 1) == SQLite.SQLITE_NULL);
+    long value = columnLong(columnIndex - 1);
+    wasNull = (value == 0 && columnType(columnIndex - 1) == SQLite.SQLITE_NULL);
     if (wasNull) {
       return null;
     } else {
-      cal.setTimeInMillis(SQLite.column_int64(statement.stmt, columnIndex - 1));
+      cal.setTimeInMillis(value);
       return new Date(cal.getTime().getTime());
     }
   }
@@ -209,8 +355,9 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
   public Time getTime(int columnIndex) throws SQLException
   {
     checkIfClosed();
-    wasNull = (SQLite.column_type(statement.stmt, columnIndex - 1) == SQLite.SQLITE_NULL);
-    return wasNull?null:new Time(SQLite.column_int64(statement.stmt, columnIndex - 1));
+    long value = columnLong(columnIndex - 1);
+    wasNull = (value == 0 && columnType(columnIndex - 1) == SQLite.SQLITE_NULL);
+    return wasNull?null:new Time(value);
   }
 
   public Time getTime(String columnName) throws SQLException
@@ -224,11 +371,12 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
       return getTime(columnIndex);
     }
     checkIfClosed();
-    wasNull = (SQLite.column_type(statement.stmt, columnIndex - 1) == SQLite.SQLITE_NULL);
+    long value = columnLong(columnIndex - 1);
+    wasNull = (value == 0 && columnType(columnIndex - 1) == SQLite.SQLITE_NULL);
     if (wasNull) {
       return null;
     } else {
-      cal.setTimeInMillis(SQLite.column_int64(statement.stmt, columnIndex - 1));
+      cal.setTimeInMillis(value);
       return new Time(cal.getTime().getTime());
     }
   }
@@ -241,8 +389,9 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
   public Timestamp getTimestamp(int columnIndex) throws SQLException
   {
     checkIfClosed();
-    wasNull = (SQLite.column_type(statement.stmt, columnIndex - 1) == SQLite.SQLITE_NULL);
-    return wasNull?null:new Timestamp(SQLite.column_int64(statement.stmt, columnIndex - 1));
+    long value = columnLong(columnIndex - 1);
+    wasNull = (value == 0 && columnType(columnIndex - 1) == SQLite.SQLITE_NULL);
+    return wasNull?null:new Timestamp(value);
   }
 
   public Timestamp getTimestamp(String columnName) throws SQLException
@@ -256,11 +405,12 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
       return getTimestamp(columnIndex);
     }
     checkIfClosed();
-    wasNull = (SQLite.column_type(statement.stmt, columnIndex - 1) == SQLite.SQLITE_NULL);
+    long value = columnLong(columnIndex - 1);
+    wasNull = (value == 0 && columnType(columnIndex - 1) == SQLite.SQLITE_NULL);
     if (wasNull) {
       return null;
     } else {
-      cal.setTimeInMillis(SQLite.column_int64(statement.stmt, columnIndex - 1));
+      cal.setTimeInMillis(value);
       return new Timestamp(cal.getTime().getTime());
     }
   }
@@ -273,8 +423,9 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
   public boolean getBoolean(int columnIndex) throws SQLException
   {
     checkIfClosed();
-    wasNull = (SQLite.column_type(statement.stmt, columnIndex - 1) == SQLite.SQLITE_NULL);
-    return SQLite.column_int(statement.stmt, columnIndex - 1) == 0 ? Boolean.FALSE.booleanValue() : Boolean.TRUE.booleanValue();
+    int value = columnInt(columnIndex - 1);
+    wasNull = (value == 0 && columnType(columnIndex - 1) == SQLite.SQLITE_NULL);
+    return value == 0 ? Boolean.FALSE.booleanValue() : Boolean.TRUE.booleanValue();
   }
 
   public boolean getBoolean(String columnName) throws SQLException
@@ -285,7 +436,7 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
   public Object getObject(int columnIndex) throws SQLException
   {
     checkIfClosed();
-    int columnType = SQLite.column_type(statement.stmt, columnIndex - 1);
+    int columnType = columnType(columnIndex - 1);
     wasNull = (columnType == SQLite.SQLITE_NULL);
 
     switch (columnType) {
@@ -294,20 +445,16 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
         return null;
       
       case SQLite.SQLITE_INTEGER:
-        return SQLite.column_int64(statement.stmt,columnIndex - 1);
+        return columnLong(columnIndex - 1);
       
       case SQLite.SQLITE_FLOAT:
-        return SQLite.column_double(statement.stmt,columnIndex - 1);
+        return columnDouble(columnIndex - 1);
       
       case SQLite.SQLITE_BLOB:
-        Pointer data = SQLite.column_blob(statement.stmt, columnIndex - 1);
-        int dataSize = SQLite.column_bytes(statement.stmt,columnIndex - 1);
-        byte[] result = new byte[dataSize];
-        data.read(0,result,0,dataSize);
-        return result;
+        return columnBytes(columnIndex - 1);
       
       default:
-        return SQLite.column_text(statement.stmt,columnIndex - 1);
+        return columnText(columnIndex - 1);
     }
   }
 
@@ -352,6 +499,239 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
   {
     if (statement == null) throw new SQLException("ResultSet is closed");
   }
+
+  private boolean isBuffered()
+  {
+    return rows != null && rows.size() > 0;
+  }
+
+  /**
+   * Steps up to <code>fetchSize</code> rows ahead and copies their values into the row buffer, so the getters don't
+   * go back to the statement. Leaves the result of the last step in <code>lastResult</code>; an error is not thrown
+   * here but once the rows read before it have been consumed.
+   */
+  private void fetchRows()
+  {
+    int columnCount = columnDefs.size();
+    if (rows == null || rows.capacity() != fetchSize) rows = new RowBuffer(columnCount, fetchSize);
+    rows.clear();
+    bufferRow = 0;
+    Pointer stmt = statement.stmt;
+    while (rows.size() < fetchSize) {
+      lastResult = statement.step();
+      if (lastResult != SQLite.SQLITE_ROW) break;
+      int row = rows.add();
+      for (int i = 0; i < columnCount; i++) {
+        int type = SQLite.column_type(stmt, i);
+        switch (type) {
+          case SQLite.SQLITE_NULL:
+            rows.putNull(row, i);
+            break;
+          case SQLite.SQLITE_INTEGER:
+            rows.putLong(row, i, SQLite.column_int64(stmt, i));
+            break;
+          case SQLite.SQLITE_FLOAT:
+            rows.putDouble(row, i, SQLite.column_double(stmt, i));
+            break;
+          case SQLite.SQLITE_BLOB:
+            byte[] blob = readBlob(i);
+            rows.putObject(row, i, type, blob != null ? blob : new byte[0]);
+            break;
+          default:
+            rows.putObject(row, i, type, readText(i));
+        }
+      }
+    }
+  }
+
+  /**
+   * The storage class of a column in the current row, asked from SQLite once per row. Getters that read a number only
+   * ask for it when the value is 0, since any other value can't be NULL.
+   */
+  private int columnType(int iCol)
+  {
+    if (isBuffered()) return rows.type(bufferRow, iCol);
+    if (columnTypeGenerations[iCol] != rowGeneration) {
+      columnTypes[iCol] = SQLite.column_type(statement.stmt, iCol);
+      columnTypeGenerations[iCol] = rowGeneration;
+    }
+    return columnTypes[iCol];
+  }
+
+  /**
+   * @return the result column holding the rowid of the table column <code>iCol</code> comes from, or -1
+   */
+  private int findRowidColumn(int iCol) throws SQLException
+  {
+    if (rowidColumns == null) {
+      rowidColumns = new int[columnDefs.size()];
+      Arrays.fill(rowidColumns, -2);
+    }
+    if (rowidColumns[iCol] != -2) return rowidColumns[iCol];
+    rowidColumns[iCol] = -1;
+    Pointer stmt = statement.stmt;
+    String table = SQLite.column_table_name(stmt, iCol);
+    if (table == null) return -1;
+    String database = SQLite.column_database_name(stmt, iCol);
+    String alias = null;
+    for (int i = 0; i < columnDefs.size(); i++) {
+      if (!table.equals(SQLite.column_table_name(stmt, i)) || !database.equals(SQLite.column_database_name(stmt, i))) continue;
+      // SQLite reports a selected rowid by the name of its INTEGER PRIMARY KEY column if there is one
+      String origin = SQLite.column_origin_name(stmt, i);
+      if (alias == null) alias = rowidAlias(database, table);
+      if (origin.equalsIgnoreCase(alias)) {
+        rowidColumns[iCol] = i;
+        break;
+      }
+    }
+    return rowidColumns[iCol];
+  }
+
+  /**
+   * @return the INTEGER PRIMARY KEY column of a table, or "rowid" if it has none
+   */
+  private String rowidAlias(String database, String table) throws SQLException
+  {
+    String result = "rowid";
+    int keys = 0;
+    Statement s = statement.connection.createStatement();
+    try {
+      ResultSet rs = s.executeQuery(String.format("PRAGMA \"%s\".table_info(\"%s\")", database.replace("\"", "\"\""), table.replace("\"", "\"\"")));
+      while (rs.next()) {
+        if (rs.getInt(6) == 0) continue;
+        keys++;
+        if ("INTEGER".equalsIgnoreCase(rs.getString(3))) result = rs.getString(2);
+      }
+    } finally {
+      s.close();
+    }
+    return keys == 1 ? result : "rowid";
+  }
+
+  private int columnInt(int iCol) throws SQLException
+  {
+    return isBuffered() ? (int) columnLong(iCol) : SQLite.column_int(statement.stmt, iCol);
+  }
+
+  private long columnLong(int iCol) throws SQLException
+  {
+    if (!isBuffered()) return SQLite.column_int64(statement.stmt, iCol);
+    return rows.isNumber(bufferRow, iCol) ? rows.getLong(bufferRow, iCol) : converted(iCol).columnLong(0);
+  }
+
+  private double columnDouble(int iCol) throws SQLException
+  {
+    if (!isBuffered()) return SQLite.column_double(statement.stmt, iCol);
+    return rows.isNumber(bufferRow, iCol) ? rows.getDouble(bufferRow, iCol) : converted(iCol).columnDouble(0);
+  }
+
+  private String columnText(int iCol) throws SQLException
+  {
+    if (!isBuffered()) return readText(iCol);
+    switch (rows.type(bufferRow, iCol)) {
+      case SQLite.SQLITE_NULL:
+        return null;
+      case SQLite.SQLITE_INTEGER:
+        return Long.toString(rows.getLong(bufferRow, iCol));
+      case SQLite.SQLITE_FLOAT:
+        return converted(iCol).readText(0);
+      case SQLite.SQLITE_BLOB:
+        return new String((byte[]) rows.getObject(bufferRow, iCol), UTF8);
+      default:
+        return (String) rows.getObject(bufferRow, iCol);
+    }
+  }
+
+  private byte[] columnBytes(int iCol) throws SQLException
+  {
+    if (isBuffered()) {
+      switch (rows.type(bufferRow, iCol)) {
+        case SQLite.SQLITE_NULL:
+          return null;
+        case SQLite.SQLITE_BLOB:
+          return ((byte[]) rows.getObject(bufferRow, iCol)).clone();
+        default:
+          return columnText(iCol).getBytes(UTF8);
+      }
+    }
+    byte[] result = readBlob(iCol);
+    if (result == null && columnType(iCol) != SQLite.SQLITE_NULL) result = new byte[0];
+    return result;
+  }
+
+  /**
+   * A buffered value read as another storage class than its own, converted by SQLite: the value is bound to "SELECT ?"
+   * and read back unbuffered, with the sqlite3_column_* call the getter makes without a fetch size. SQLite's conversions
+   * aren't repeated in Java, so the result doesn't depend on the fetch size.
+   * 
+   * @return the result set of the conversion, on its only row
+   */
+  private SQLiteResultSet converted(int iCol) throws SQLException
+  {
+    if (conversion == null) conversion = new SQLiteStatement(statement.connection, "SELECT ?");
+    conversion.setObject(1, rows.getObject(bufferRow, iCol));
+    SQLiteResultSet result = (SQLiteResultSet) conversion.executeQuery();
+    result.next();
+    return result;
+  }
+
+  /**
+   * @return the value, or <code>null</code> for SQL NULL and for an empty value
+   */
+  private byte[] readBlob(int iCol)
+  {
+    Pointer data = SQLite.column_blob(statement.stmt, iCol);
+    if (data == null) return null;
+    int dataSize = SQLite.column_bytes(statement.stmt, iCol);
+    byte[] result = new byte[dataSize];
+    data.read(0, result, 0, dataSize);
+    return result;
+  }
+
+  /**
+   * Decodes a TEXT value straight from the buffer owned by SQLite. The bytes and chars go through buffers reused for
+   * the life of the result set, so the returned String is the only allocation. Pure ASCII values skip the decoder.
+   * 
+   * @return the value or <code>null</code> for SQL NULL
+   */
+  private String readText(int iCol)
+  {
+    columnTextReads[iCol]++;
+    Pointer text = SQLite.column_text_pointer(statement.stmt, iCol);
+    if (text == null) return null;
+    int len = SQLite.column_bytes(statement.stmt, iCol);
+    if (len == 0) return "";
+
+    if (textBytes == null || textBytes.length < len) {
+      // A UTF-8 sequence never decodes to more chars than it has bytes
+      int size = Math.max(len, 256);
+      textBytes = new byte[size];
+      textChars = new char[size];
+      textByteBuffer = ByteBuffer.wrap(textBytes);
+      textCharBuffer = CharBuffer.wrap(textChars);
+    }
+    text.read(0, textBytes, 0, len);
+
+    int i = 0;
+    for (; i < len; i++) {
+      byte b = textBytes[i];
+      if (b < 0) break;
+      textChars[i] = (char) b;
+    }
+    if (i == len) return new String(textChars, 0, len);
+
+    if (textDecoder == null) {
+      textDecoder = UTF8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+    textByteBuffer.clear();
+    textByteBuffer.position(i).limit(len);
+    textCharBuffer.clear();
+    textCharBuffer.position(i);
+    textDecoder.reset();
+    textDecoder.decode(textByteBuffer, textCharBuffer, true);
+    textDecoder.flush(textCharBuffer);
+    return new String(textChars, 0, textCharBuffer.position());
+  }
   
 
    
@@ -433,26 +813,6 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
     throw new SQLException("Not implemented: getBigDecimal(String columnName, int scale)");
   }
 
-  public InputStream getBinaryStream(int columnIndex) throws SQLException
-  {
-    throw new SQLException("Not implemented: getBinaryStream(int columnIndex)");
-  }
-
-  public InputStream getBinaryStream(String columnName) throws SQLException
-  {
-    throw new SQLException("Not implemented: getBinaryStream(String columnName)");
-  }
-
-  public Blob getBlob(int i) throws SQLException
-  {
-    throw new SQLException("Not implemented: etBlob(int i)");
-  }
-
-  public Blob getBlob(String colName) throws SQLException
-  {
-    throw new SQLException("Not implemented: getBlob(String colName)");
-  }
-
   public byte getByte(int columnIndex) throws SQLException
   {
     throw new SQLException("Not implemented: getByte(int columnIndex)");
@@ -500,7 +860,7 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
 
   public int getFetchSize() throws SQLException
   {
-    throw new SQLException("Not implemented: getFetchSize()");
+    return fetchSize;
   }
 
   public Object getObject(int i, Map<String, Class<?>> map) throws SQLException
@@ -523,11 +883,6 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
     throw new SQLException("Not implemented: Ref getRef(String colName)");
   }
 
-  public int getRow() throws SQLException
-  {
-    throw new SQLException("Not implemented: getRow() ");
-  }
-
   public Statement getStatement() throws SQLException
   {
     throw new SQLException("Not implemented: Statement getStatement()");
@@ -638,9 +993,16 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
     throw new SQLException("Not implemented: setFetchDirection(int direction");
   }
 
+  /**
+   * A fetch size above 1 makes {@link #next()} read that many rows at a time into a columnar buffer, which the getters
+   * then read without calls into SQLite. Each value is buffered as its own storage class; reading a TEXT or BLOB as a
+   * number, or a REAL as text, still asks SQLite for the conversion. Rows already buffered are returned before a new
+   * size takes effect.
+   */
   public void setFetchSize(int rows) throws SQLException
   {
-    throw new SQLException("Not implemented: setFetchSize(int rows)");
+    if (rows < 0) throw new SQLException("Fetch size must not be negative", "", SQLite.SQLITE_MISUSE);
+    fetchSize = rows;
   }
 
   public void updateArray(int columnIndex, Array x) throws SQLException
@@ -989,6 +1351,68 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
       
   }
 
+  // ***************************************************************************
+  /**
+   * Reads a column value in place, for as long as the result set stays on the row it was taken from and the value is
+   * not read as text.
+   */
+  private class ColumnInputStream extends InputStream
+  {
+    private final ByteBuffer data;
+    private final int        column;
+    private final long       generation;
+    private final int        textReads;
+
+    ColumnInputStream(ByteBuffer pData, int pColumn)
+    {
+      super();
+      data = pData;
+      column = pColumn;
+      generation = rowGeneration;
+      textReads = columnTextReads[pColumn];
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+      checkRow();
+      return data.hasRemaining() ? data.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+      checkRow();
+      if (len == 0) return 0;
+      if (!data.hasRemaining()) return -1;
+      int n = Math.min(len, data.remaining());
+      data.get(b, off, n);
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+      checkRow();
+      int k = (int) Math.max(0, Math.min(n, data.remaining()));
+      data.position(data.position() + k);
+      return k;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+      checkRow();
+      return data.remaining();
+    }
+
+    private void checkRow() throws IOException
+    {
+      if (statement == null || rowGeneration != generation) throw new IOException("The result set has left the row of this stream");
+      if (columnTextReads[column] != textReads) throw new IOException("The value of this stream has been read as text");
+    }
+  }
+
   public int getHoldability() throws SQLException
   {
     throw new SQLException("Not implemented: getHoldability()");
@@ -1169,14 +1593,25 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
     throw new SQLException("Not implemented: updateNString(String columnLabel, String nString)");
   }
 
+  public <T> T getObject(int columnIndex, Class<T> type) throws SQLException
+  {
+    throw new SQLException("Not implemented: getObject(int columnIndex, Class<T> type)");
+  }
+
+  public <T> T getObject(String columnLabel, Class<T> type) throws SQLException
+  {
+    throw new SQLException("Not implemented: getObject(String columnLabel, Class<T> type)");
+  }
+
   public boolean isWrapperFor(Class<?> iface) throws SQLException
   {
-    throw new SQLException("Not implemented: isWrapperFor(Class<?> iface)");
+    return iface.isInstance(this);
   }
 
   public <T> T unwrap(Class<T> iface) throws SQLException
   {
-    throw new SQLException("Not implemented: <T> T unwrap(Class<T> iface)");
+    if (!iface.isInstance(this)) throw new SQLException(String.format("Not a wrapper for %s", iface.getName()));
+    return iface.cast(this);
   }
 
   public NClob getNClob(int columnIndex) throws SQLException
@@ -1241,3 +1676,139 @@ public class SQLiteResultSet implements ResultSet,ResultSetMetaData
 
  
 }
+
+/**
+ * Values of up to <code>capacity</code> rows, filled by {@link SQLiteResultSet#next()} in fetch-size mode. Each column
+ * is a contiguous run in flat arrays: the storage class, the INTEGER value or REAL bits, and the TEXT String or BLOB
+ * bytes, as SQLite returned them. Between numbers the conversions are Java's narrowing and widening, which match
+ * SQLite's; any other conversion is left to SQLite.
+ */
+class RowBuffer
+{
+  private final int capacity;
+  private final byte[] types;
+  private final long[] values;
+  private final Object[] objects;
+  private int size;
+
+  RowBuffer(int columns, int capacity)
+  {
+    this.capacity = capacity;
+    types = new byte[columns * capacity];
+    values = new long[columns * capacity];
+    objects = new Object[columns * capacity];
+    size = 0;
+  }
+
+  int capacity()
+  {
+    return capacity;
+  }
+
+  int size()
+  {
+    return size;
+  }
+
+  void clear()
+  {
+    if (size > 0) Arrays.fill(objects, null);
+    size = 0;
+  }
+
+  int add()
+  {
+    return size++;
+  }
+
+  void putNull(int row, int col)
+  {
+    types[col * capacity + row] = SQLite.SQLITE_NULL;
+  }
+
+  void putLong(int row, int col, long value)
+  {
+    int i = col * capacity + row;
+    types[i] = SQLite.SQLITE_INTEGER;
+    values[i] = value;
+  }
+
+  void putDouble(int row, int col, double value)
+  {
+    int i = col * capacity + row;
+    types[i] = SQLite.SQLITE_FLOAT;
+    values[i] = Double.doubleToRawLongBits(value);
+  }
+
+  void putObject(int row, int col, int type, Object value)
+  {
+    int i = col * capacity + row;
+    types[i] = (byte) type;
+    objects[i] = value;
+  }
+
+  int type(int row, int col)
+  {
+    return types[col * capacity + row];
+  }
+
+  /**
+   * @return <code>true</code> for NULL, INTEGER and REAL values
+   */
+  boolean isNumber(int row, int col)
+  {
+    int type = types[col * capacity + row];
+    return type == SQLite.SQLITE_NULL || type == SQLite.SQLITE_INTEGER || type == SQLite.SQLITE_FLOAT;
+  }
+
+  /**
+   * @see #isNumber(int, int)
+   */
+  long getLong(int row, int col)
+  {
+    int i = col * capacity + row;
+    switch (types[i]) {
+      case SQLite.SQLITE_INTEGER:
+        return values[i];
+      case SQLite.SQLITE_FLOAT:
+        // Out of range values saturate like in SQLite, which stores NaN as NULL
+        return (long) Double.longBitsToDouble(values[i]);
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * @see #isNumber(int, int)
+   */
+  double getDouble(int row, int col)
+  {
+    int i = col * capacity + row;
+    switch (types[i]) {
+      case SQLite.SQLITE_INTEGER:
+        return values[i];
+      case SQLite.SQLITE_FLOAT:
+        return Double.longBitsToDouble(values[i]);
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * @return the value as a Long, Double, String or byte[], or <code>null</code> for NULL
+   */
+  Object getObject(int row, int col)
+  {
+    int i = col * capacity + row;
+    switch (types[i]) {
+      case SQLite.SQLITE_NULL:
+        return null;
+      case SQLite.SQLITE_INTEGER:
+        return values[i];
+      case SQLite.SQLITE_FLOAT:
+        return Double.longBitsToDouble(values[i]);
+      default:
+        return objects[i];
+    }
+  }
+}
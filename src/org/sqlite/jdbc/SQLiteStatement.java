@@ -1,9 +1,14 @@
 package org.sqlite.jdbc;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.math.BigDecimal;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Array;
 import java.sql.BatchUpdateException;
 import java.sql.Blob;
@@ -25,6 +30,7 @@ import java.sql.Time;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
@@ -32,6 +38,8 @@ import java.util.Map;
 
 import org.sqlite.SQLite;
 
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
 import com.sun.jna.Pointer;
 import com.sun.jna.ptr.PointerByReference;
 
@@ -48,7 +56,11 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
     },
     DATE(Date.class, Types.DATE, "DATE") {
     },
-    TEXT(String.class, Types.LONGVARCHAR, "TEXT");
+    TEXT(String.class, Types.LONGVARCHAR, "TEXT") {
+    },
+    DOUBLE(Double.class, Types.DOUBLE, "DOUBLE") {
+    },
+    BLOB(byte[].class, Types.BLOB, "BLOB");
 
     public Class<?> clazz;
     public int      sqlType;
@@ -68,12 +80,22 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
     TYPE_MAP.put(java.lang.Integer.class, BindType.INT);
     TYPE_MAP.put(java.lang.Long.class, BindType.LONG);
     TYPE_MAP.put(java.lang.String.class, BindType.TEXT);
+    TYPE_MAP.put(java.lang.Double.class, BindType.DOUBLE);
+    TYPE_MAP.put(java.lang.Float.class, BindType.DOUBLE);
+    TYPE_MAP.put(byte[].class, BindType.BLOB);
     TYPE_MAP.put(java.util.Date.class, BindType.DATE);
     TYPE_MAP.put(java.sql.Date.class, BindType.DATE);
     TYPE_MAP.put(java.sql.Time.class, BindType.DATE);
     TYPE_MAP.put(java.sql.Timestamp.class, BindType.DATE);
   }
   
+  // Native buffers grown beyond this are dropped once SQLite has its copy: scripts when all their statements are
+  // prepared, parameters when they are cleared or the statement is closed, so a large value bound on every execute
+  // doesn't reallocate each time
+  private final static int BUFFER_RETAINED = 64 * 1024;
+  // Stream parameters are read in chunks of this size
+  private final static int STREAM_CHUNK = 64 * 1024;
+
   private final static List<ColumnDef> getGeneratedKeys_columnDefs = new ArrayList<ColumnDef>();
   static {
     getGeneratedKeys_columnDefs.add(new ColumnDef( 1,"GENERATED_KEY", "Long"));
@@ -81,31 +103,65 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
 
   SQLiteConnection               connection;
   Pointer                        stmt;
+  int                            fetchSize;
+  int                            queryTimeout;
   
   private String                 sql;
-  private Map<Integer, ParamDef> params;
+  private String                 cacheKey;
+  private int                    paramCount;
+  private BindType[]             paramTypes;
+  private long[]                 paramLongs;
+  private Object[]               paramObjects;
+  private long[]                 paramDirty;
+  // Read by cancel(), from any thread
+  private volatile boolean       active;
+  private int                    batchRows;
+  private BindType[]             batchTypes;
+  private long[]                 batchLongs;
+  private Object[]               batchObjects;
   private SQLiteResultSet        resultSet;
   private int                    updateCount;
   private boolean                escapeProcessing;
   private boolean                fetchGeneratedKey;
   private Long                   generatedKey;
+  private BindBuffer             bindBuffer;
+  private BindBuffer             scriptBuffer;
+  private int                    scriptOffset;
+  private int                    scriptLength;
+  // Set while the statement has a handle, or is open after having had one
+  private StatementRegistry.Owner owner;
 
   public SQLiteStatement(SQLiteConnection pConnection)
   {
     connection = pConnection;
     sql = null;
-    params = new HashMap<Integer, ParamDef>();
+    paramCount = 0;
+    paramTypes = new BindType[0];
+    paramLongs = new long[0];
+    paramObjects = new Object[0];
+    paramDirty = new long[0];
+    active = false;
+    batchRows = 0;
+    batchTypes = new BindType[0];
+    batchLongs = new long[0];
+    batchObjects = new Object[0];
     stmt = null;
     resultSet = null;
     updateCount = -1;
     escapeProcessing = false;
+    fetchSize = 0;
+    queryTimeout = 0;
+    bindBuffer = new BindBuffer();
+    scriptBuffer = new BindBuffer();
+    scriptOffset = 0;
+    scriptLength = 0;
   }
 
   public SQLiteStatement(SQLiteConnection pConnection, String pSQL) throws SQLException
   {
     this(pConnection);
     sql = pSQL;
-    internalPrepare();
+    internalPrepare(true);
   }
 
   public SQLiteStatement(SQLiteConnection pConnection, String pSQL,int autoGeneratedKeys) throws SQLException
@@ -113,19 +169,7 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
     this(pConnection);
     sql = pSQL;
     fetchGeneratedKey = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS;
-    internalPrepare();
-  }
-
-  /**
-   * 1. A Statement object is automatically closed when it is garbage collected. (1.5)
-   * 
-   * @see java.sql.Statement#close()
-   */
-  @Override
-  protected void finalize() throws Throwable
-  {
-    close();
-    super.finalize();
+    internalPrepare(true);
   }
 
   // ***************************************************************************
@@ -133,17 +177,18 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
   // ***************************************************************************
 
   /**
+   * 1. A Statement object that is garbage collected without being closed has its handle freed by the connection, see
+   * {@link SQLiteConnection#setLeakDetection(boolean)}. (1.5)
+   * 
    * @see java.sql.Statement#close()
    */
   public void close() throws SQLException
   {
-    if (stmt != null) {
-      if (resultSet != null) {
-        resultSet.close();
-        resultSet = null;
-      }
-      SQLite.finalize(stmt);
-      stmt = null;
+    closeStatement();
+    bindBuffer.release(BUFFER_RETAINED);
+    if (owner != null) {
+      connection.statements.unregister(owner);
+      owner = null;
     }
   }
 
@@ -167,7 +212,7 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
   {
     sql = pSql;
     fetchGeneratedKey = false;
-    internalPrepare();
+    internalPrepare(false);
     return internalExecute();
   }
 
@@ -175,7 +220,7 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
   {
     sql = pSql;
     fetchGeneratedKey = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS;
-    internalPrepare();
+    internalPrepare(false);
     return internalExecute();
   }
 
@@ -237,14 +282,22 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
     throw new SQLException("Not implemented: addBatch(String sql)");
   }
 
+  /**
+   * Interrupts the statement if it is running, from any thread, see sqlite3_interrupt. The interrupted call fails with
+   * SQLTimeoutException. As SQLite interrupts whatever the connection is running, a cancel that comes in just as the
+   * statement finishes may hit the next step of an open result set of the same connection.
+   * 
+   * @see java.sql.Statement#cancel()
+   */
   public void cancel() throws SQLException
   {
-    throw new SQLException("Not implemented: cancel()");
+    if (active) connection.interrupt();
   }
 
   public void clearBatch() throws SQLException
   {
-    throw new SQLException("Not implemented: clearBatch()");
+    Arrays.fill(batchObjects, 0, batchRows * paramCount, null);
+    batchRows = 0;
   }
 
   public void clearWarnings() throws SQLException
@@ -254,26 +307,132 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
 
   public int[] executeBatch() throws SQLException
   {
-    SQLException be  = null;
+    if (batchRows > 0) return executeParameterBatch();
     ArrayList<Integer> rr = new ArrayList<Integer>();
-    while (true) {
-      try {
-        if (internalExecute()) throw new SQLException("Statement attempts to return a result set","",SQLite.SQLITE_OK);
-        rr.add(updateCount);
+    try {
+      internalExecuteScript(rr);
+    } catch (SQLException e) {
+      throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), toIntArray(rr));
+    }
+    return toIntArray(rr);
+  }
+
+  /**
+   * Executes every statement of a SQL script, e.g. a migration or a dump. The script is encoded to native memory once
+   * and walked by offset, so the cost is linear in its size.
+   * 
+   * @return update count of each statement
+   * @throws BatchUpdateException with the update counts of the statements executed before the failing one
+   */
+  public int[] executeScript(String pScript) throws SQLException
+  {
+    ArrayList<Integer> rr = new ArrayList<Integer>();
+    sql = pScript;
+    fetchGeneratedKey = false;
+    try {
+      internalPrepare(false);
+      internalExecuteScript(rr);
+    } catch (SQLException e) {
+      throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), toIntArray(rr));
+    }
+    return toIntArray(rr);
+  }
+
+  /**
+   * Executes a SQL script read from <code>pReader</code> without holding all of it in memory. The text is split into
+   * statements at each ';' outside of quotes and comments for which sqlite3_complete reports a complete statement, and
+   * every statement is executed as soon as it has been read.
+   * 
+   * @see #executeScript(String)
+   */
+  public int[] executeScript(Reader pReader) throws SQLException
+  {
+    ArrayList<Integer> rr = new ArrayList<Integer>();
+    StringBuilder pending = new StringBuilder();
+    char[] buf = new char[8192];
+    // Closing char of the open string or quoted name, or 0
+    char quote = 0;
+    boolean lineComment = false;
+    boolean blockComment = false;
+    // Previous char, 0 if it can't start a two-char token with the current one
+    char prev = 0;
+    fetchGeneratedKey = false;
+    try {
+      int n;
+      while ((n = pReader.read(buf)) >= 0) {
+        int start = 0;
+        for (int i = 0; i < n; i++) {
+          char c = buf[i];
+          if (lineComment) {
+            lineComment = c != '\n';
+          } else if (blockComment) {
+            if (prev == '*' && c == '/') {
+              blockComment = false;
+              c = 0;
+            }
+          } else if (quote != 0) {
+            // A doubled quote char closes and reopens the string
+            if (c == quote) quote = 0;
+          } else if (c == '\'' || c == '"' || c == '`') {
+            quote = c;
+          } else if (c == '[') {
+            quote = ']';
+          } else if (prev == '-' && c == '-') {
+            lineComment = true;
+          } else if (prev == '/' && c == '*') {
+            blockComment = true;
+            c = 0;
+          }
+          prev = c;
+          // Only a ';' outside of strings and comments can end the statement, sqlite3_complete tells if it is not
+          // part of a trigger body
+          if (c != ';' || quote != 0 || lineComment || blockComment) continue;
+          pending.append(buf, start, i + 1 - start);
+          start = i + 1;
+          String candidate = pending.toString();
+          if (SQLite.complete(candidate) != 0) {
+            sql = candidate;
+            internalPrepare(false);
+            internalExecuteScript(rr);
+            pending.setLength(0);
+          }
+        }
+        pending.append(buf, start, n - start);
       }
-      catch (SQLException e) {
-        be = e;
-        break;
+      // Last statement without a terminating ';'
+      if (pending.toString().trim().length() > 0) {
+        sql = pending.toString();
+        internalPrepare(false);
+        internalExecuteScript(rr);
       }
-      if (sql == null) break;
-      internalPrepare();
+    } catch (IOException e) {
+      throw new BatchUpdateException(e.getMessage(), "", SQLite.SQLITE_IOERR, toIntArray(rr));
+    } catch (SQLException e) {
+      throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), toIntArray(rr));
     }
-    int[] result = new int[rr.size()];
-    for (int i = 0; i < rr.size();  i++) result[i] = rr.get(i);
-    if (be != null) {
-      throw new BatchUpdateException(be.getMessage(),be.getSQLState(),be.getErrorCode(),result);
+    return toIntArray(rr);
+  }
+
+  /**
+   * @see #executeScript(Reader)
+   */
+  public int[] executeScript(Path pPath) throws SQLException
+  {
+    Reader rd = null;
+    try {
+      rd = Files.newBufferedReader(pPath, Charset.forName("UTF-8"));
+      return executeScript(rd);
+    } catch (IOException e) {
+      throw new SQLException(e.getMessage(), "", SQLite.SQLITE_IOERR);
+    } finally {
+      if (rd != null) {
+        try {
+          rd.close();
+        } catch (IOException e) {
+          // nothing left to read
+        }
+      }
     }
-    return result;
   }
 
   public int getFetchDirection() throws SQLException
@@ -283,7 +442,7 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
 
   public int getFetchSize() throws SQLException
   {
-    throw new SQLException("Not implemented: getFetchSize()");
+    return fetchSize;
   }
 
   public ResultSet getGeneratedKeys() throws SQLException
@@ -310,7 +469,7 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
 
   public int getQueryTimeout() throws SQLException
   {
-    throw new SQLException("Not implemented:  getQueryTimeout()");
+    return queryTimeout;
   }
 
   public int getResultSetConcurrency() throws SQLException
@@ -343,9 +502,13 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
     throw new SQLException("Not implemented: setFetchDirection(int direction)");
   }
 
+  /**
+   * @see SQLiteResultSet#setFetchSize(int)
+   */
   public void setFetchSize(int rows) throws SQLException
   {
-    throw new SQLException("Not implemented: setFetchSize(int rows)");
+    if (rows < 0) throw new SQLException("Fetch size must not be negative", "", SQLite.SQLITE_MISUSE);
+    fetchSize = rows;
   }
 
   public void setMaxFieldSize(int max) throws SQLException
@@ -358,9 +521,17 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
     throw new SQLException("Not implemented: setMaxRows(int max)");
   }
 
+  /**
+   * Limits every step of the statement, on execute and on each fetch of its result set, to <code>seconds</code>. A
+   * step that runs longer is interrupted by the connection's progress handler and fails with SQLTimeoutException. 0
+   * (the default) means no limit.
+   * 
+   * @see java.sql.Statement#setQueryTimeout(int)
+   */
   public void setQueryTimeout(int seconds) throws SQLException
   {
-    throw new SQLException("Not implemented: setQueryTimeout(int seconds)");
+    if (seconds < 0) throw new SQLException("Query timeout must not be negative", "", SQLite.SQLITE_MISUSE);
+    queryTimeout = seconds;
   }
 
   // ***************************************************************************
@@ -405,32 +576,32 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
 
   public void setDate(int parameterIndex, Date x) throws SQLException
   {
-    internalSetParam(parameterIndex,x,BindType.DATE);
+    internalSetDate(parameterIndex,x);
   }
 
   public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException
   {
-    internalSetParam(parameterIndex,x,BindType.DATE);
+    internalSetDate(parameterIndex,x);
   }
 
   public void setTime(int parameterIndex, Time x) throws SQLException
   {
-    internalSetParam(parameterIndex,x,BindType.DATE);
+    internalSetDate(parameterIndex,x);
   }
 
   public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException
   {
-    internalSetParam(parameterIndex,x,BindType.DATE);
+    internalSetDate(parameterIndex,x);
   }
 
   public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException
   {
-    internalSetParam(parameterIndex,x,BindType.DATE);
+    internalSetDate(parameterIndex,x);
   }
 
   public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException
   {
-    internalSetParam(parameterIndex,x,BindType.DATE);
+    internalSetDate(parameterIndex,x);
   }
 
   public void setString(int parameterIndex, String x) throws SQLException
@@ -440,14 +611,36 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
 
   public void setBoolean(int parameterIndex, boolean x) throws SQLException
   {
-    internalSetParam(parameterIndex,x,BindType.BOOL);
+    internalSetParam(parameterIndex,x ? 1 : 0,BindType.BOOL);
   }
   
   public void setObject(int parameterIndex, Object x) throws SQLException
   {
+    if (x == null) {
+      internalSetParam(parameterIndex,null,BindType.UNKNOWN);
+      return;
+    }
+    if (x instanceof ByteBuffer) {
+      // Bound from position to limit, later changes to the position don't matter
+      internalSetParam(parameterIndex,((ByteBuffer) x).duplicate(),BindType.BLOB);
+      return;
+    }
     BindType bt = TYPE_MAP.get(x.getClass());
     if (bt == null) throw new SQLException(String.format("Cannot convert %s",x.getClass().getName()));
-    internalSetParam(parameterIndex,x,bt);
+    switch (bt) {
+      case INT:
+      case LONG:
+        internalSetParam(parameterIndex,((Number) x).longValue(),bt);
+        break;
+      case DOUBLE:
+        setDouble(parameterIndex,((Number) x).doubleValue());
+        break;
+      case DATE:
+        internalSetDate(parameterIndex,(java.util.Date) x);
+        break;
+      default:
+        internalSetParam(parameterIndex,x,bt);
+    }
   }
 
   public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException
@@ -464,14 +657,46 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
   
   
   
+  /**
+   * Copies the current parameter values into the batch buffer: one row of <code>paramCount</code> slots in flat arrays
+   * laid out like the parameter store.
+   * 
+   * @see java.sql.PreparedStatement#addBatch()
+   */
   public void addBatch() throws SQLException
   {
-    throw new SQLException("Not implemented: addBatch");
+    if (stmt == null) throw new SQLException("No statement to add to the batch", "", SQLite.SQLITE_MISUSE);
+    int base = batchRows * paramCount;
+    int size = base + paramCount;
+    if (batchTypes.length < size) {
+      int capacity = Math.max(size, batchTypes.length * 2);
+      batchTypes = Arrays.copyOf(batchTypes, capacity);
+      batchLongs = Arrays.copyOf(batchLongs, capacity);
+      batchObjects = Arrays.copyOf(batchObjects, capacity);
+    }
+    System.arraycopy(paramTypes, 0, batchTypes, base, paramCount);
+    System.arraycopy(paramLongs, 0, batchLongs, base, paramCount);
+    System.arraycopy(paramObjects, 0, batchObjects, base, paramCount);
+    for (int i = 0; i < paramCount; i++) {
+      // The caller may refill the same array or buffer for the next row
+      if (paramTypes[i] == BindType.BLOB) batchObjects[base + i] = copyBytes(paramObjects[i]);
+    }
+    batchRows++;
   }
 
   public void clearParameters() throws SQLException
   {
-    throw new SQLException("Not implemented: clearParameters");
+    if (stmt == null) return;
+    Arrays.fill(paramTypes, null);
+    Arrays.fill(paramObjects, null);
+    bindBuffer.release(BUFFER_RETAINED);
+    if (active) {
+      // Can't touch the bindings of a running statement: bind NULLs on the next execute
+      for (int i = 0; i < paramCount; i++) paramDirty[i >> 6] |= 1L << i;
+    } else {
+      Arrays.fill(paramDirty, 0);
+      connection.check(SQLite.clear_bindings(stmt));
+    }
   }
 
   public ResultSetMetaData getMetaData() throws SQLException
@@ -499,14 +724,25 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
     throw new SQLException("Not implemented: setBigDecimal");
   }
 
+  /**
+   * Reads exactly <code>length</code> bytes of the stream into a direct buffer, outside of the Java heap, and binds them
+   * as a BLOB like any other value. The value has to fit in direct memory (-XX:MaxDirectMemorySize) and within SQLite's
+   * maximum length (SQLITE_MAX_LENGTH, 1,000,000,000 bytes by default). To write a value without ever holding it in
+   * memory, reserve it with <code>zeroblob(?)</code> and write it through
+   * {@link SQLiteConnection#openBlob(String, String, String, long, boolean)} once the row exists.
+   */
   public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException
   {
-    throw new SQLException("Not implemented: setBinaryStream");
+    internalSetStream(parameterIndex, x, length);
   }
 
   public void setBlob(int i, Blob x) throws SQLException
   {
-    throw new SQLException("Not implemented: setBlob");
+    if (x == null) {
+      internalSetParam(i, null, BindType.UNKNOWN);
+    } else {
+      internalSetStream(i, x.getBinaryStream(), x.length());
+    }
   }
 
   public void setByte(int parameterIndex, byte x) throws SQLException
@@ -516,7 +752,7 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
 
   public void setBytes(int parameterIndex, byte[] x) throws SQLException
   {
-    throw new SQLException("Not implemented: setBytes");
+    internalSetParam(parameterIndex,x,BindType.BLOB);
   }
 
   public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException
@@ -531,12 +767,12 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
 
   public void setDouble(int parameterIndex, double x) throws SQLException
   {
-    throw new SQLException("Not implemented: setDouble");
+    internalSetParam(parameterIndex,Double.doubleToRawLongBits(x),BindType.DOUBLE);
   }
 
   public void setFloat(int parameterIndex, float x) throws SQLException
   {
-    throw new SQLException("Not implemented: setFloat");
+    setDouble(parameterIndex,x);
   }
 
   public void setRef(int i, Ref x) throws SQLException
@@ -574,9 +810,12 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
     throw new SQLException("Not implemented: ");
   }
 
+  /**
+   * @see #setBinaryStream(int, InputStream, int)
+   */
   public void setBinaryStream(int arg0, InputStream arg1, long arg2) throws SQLException
   {
-    throw new SQLException("Not implemented: ");
+    internalSetStream(arg0, arg1, arg2);
   }
 
   public void setBlob(int arg0, InputStream arg1) throws SQLException
@@ -584,9 +823,12 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
     throw new SQLException("Not implemented: ");
   }
 
+  /**
+   * @see #setBinaryStream(int, InputStream, int)
+   */
   public void setBlob(int arg0, InputStream arg1, long arg2) throws SQLException
   {
-    throw new SQLException("Not implemented: ");
+    internalSetStream(arg0, arg1, arg2);
   }
 
   public void setCharacterStream(int arg0, Reader arg1) throws SQLException
@@ -649,14 +891,25 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
     throw new SQLException("Not implemented: ");
   }
 
+  public void closeOnCompletion() throws SQLException
+  {
+    throw new SQLException("Not implemented: closeOnCompletion()");
+  }
+
+  public boolean isCloseOnCompletion() throws SQLException
+  {
+    return false;
+  }
+
   public boolean isWrapperFor(Class<?> iface) throws SQLException
   {
-    throw new SQLException("Not implemented: ");
+    return iface.isInstance(this);
   }
 
   public <T> T unwrap(Class<T> iface) throws SQLException
   {
-    throw new SQLException("Not implemented: ");
+    if (!iface.isInstance(this)) throw new SQLException(String.format("Not a wrapper for %s", iface.getName()));
+    return iface.cast(this);
   }
 
   // ***************************************************************************
@@ -679,20 +932,17 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
 
   public String getParameterClassName(int param) throws SQLException
   {
-    ParamDef pd = params.get(param);
-    return pd != null ? pd.bindType.clazz.getName() : BindType.UNKNOWN.clazz.getName();
+    return getParamType(param).clazz.getName();
   }
 
   public int getParameterType(int param) throws SQLException
   {
-    ParamDef pd = params.get(param);
-    return pd != null ? pd.bindType.sqlType : BindType.UNKNOWN.sqlType;
+    return getParamType(param).sqlType;
   }
 
   public String getParameterTypeName(int param) throws SQLException
   {
-    ParamDef pd = params.get(param);
-    return pd != null ? pd.bindType.sqlTypeName : BindType.UNKNOWN.sqlTypeName;
+    return getParamType(param).sqlTypeName;
   }
 
   public int getPrecision(int param) throws SQLException
@@ -728,26 +978,101 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
   // ***************************************************************************
   // *** Private/protected methods
   // ***************************************************************************
-  private void internalPrepare() throws SQLException
+  /**
+   * Gives the handle back to the statement cache, or finalizes it. The statement stays registered with the connection.
+   */
+  private void closeStatement() throws SQLException
+  {
+    if (stmt != null) {
+      if (resultSet != null) {
+        resultSet.close();
+        resultSet = null;
+      }
+      if (cacheKey == null || !connection.cacheStatement(cacheKey, stmt)) connection.statements.free(stmt);
+      stmt = null;
+      owner.stmt = null;
+      cacheKey = null;
+    }
+  }
+
+  /**
+   * Prepares the first statement in <code>sql</code> and leaves the rest of the script in <code>sql</code>.
+   * 
+   * @param pCacheable <code>true</code> to take the statement from the connection's statement cache and hand it back
+   *          there on close. Only used for single-statement SQL.
+   */
+  private void internalPrepare(boolean pCacheable) throws SQLException
   {
-    close();
+    closeStatement();
     if (sql == null) throw new NullPointerException();
-    params.clear();
     generatedKey = null;
+    if (owner == null) owner = connection.statements.register(this);
+    if (pCacheable) {
+      Pointer cached = connection.takeCachedStatement(sql);
+      if (cached != null) {
+        stmt = cached;
+        owner.stmt = stmt;
+        cacheKey = sql;
+        sql = null;
+        allocateParams(SQLite.bind_parameter_count(stmt));
+        return;
+      }
+    }
+    String script = sql;
+    sql = null;
+    scriptLength = scriptBuffer.putUTF8(script);
+    scriptOffset = 0;
+    prepareNext();
+    if (pCacheable && stmt != null && scriptOffset == scriptLength) cacheKey = script;
+  }
+
+  /**
+   * Prepares the statement starting at <code>scriptOffset</code> and moves the offset past it.
+   */
+  private void prepareNext() throws SQLException
+  {
     PointerByReference pstmt = new PointerByReference();
     PointerByReference pTail = new PointerByReference();
+    Pointer start = scriptBuffer.pointer().share(scriptOffset);
     try {
-      connection.check(SQLite.prepare_v2(connection.handle, sql, -1, pstmt, pTail));
+      // The length includes the terminating zero, so SQLite parses the buffer in place instead of copying the rest of
+      // the script for each statement
+      connection.check(SQLite.prepare_v2(connection.handle, start, scriptLength - scriptOffset + 1, pstmt, pTail));
+      Pointer tail = pTail.getValue();
+      scriptOffset = tail != null ? scriptOffset + (int) (Pointer.nativeValue(tail) - Pointer.nativeValue(start)) : scriptLength;
+    } catch (SQLException e) {
+      scriptOffset = scriptLength;
+      throw e;
     } finally {
-      sql = pTail.getValue().getString(0,false);
-      if (sql.length() > 0) {
-        int i = 1;
-      }
-      if (sql.length() == 0) sql = null;
       stmt = pstmt.getValue();
+      connection.statements.add(stmt);
+      owner.stmt = stmt;
+      if (scriptOffset == scriptLength) scriptBuffer.release(BUFFER_RETAINED);
+    }
+    allocateParams(stmt != null ? SQLite.bind_parameter_count(stmt) : 0);
+  }
+
+  /**
+   * Executes the prepared statement and every statement left in the script buffer after it.
+   */
+  private void internalExecuteScript(List<Integer> pUpdateCounts) throws SQLException
+  {
+    while (true) {
+      if (internalExecute()) throw new SQLException("Statement attempts to return a result set","",SQLite.SQLITE_OK);
+      pUpdateCounts.add(updateCount);
+      if (scriptOffset >= scriptLength) break;
+      closeStatement();
+      prepareNext();
     }
   }
 
+  private static int[] toIntArray(List<Integer> pList)
+  {
+    int[] result = new int[pList.size()];
+    for (int i = 0; i < result.length; i++) result[i] = pList.get(i);
+    return result;
+  }
+
   private boolean internalExecute() throws SQLException
   {
     if (stmt == null) {
@@ -756,67 +1081,431 @@ public class SQLiteStatement implements PreparedStatement,ParameterMetaData
       updateCount = 0;
       return false;
     }
-    // Bind parameters
-    for (int i = 1; i <= SQLite.bind_parameter_count(stmt); i++) {
-      ParamDef pd = params.get(i);
-      if (pd == null || pd.value == null) {
-        connection.check(SQLite.bind_null(stmt, i));
-        continue;
-      }
-      switch (pd.bindType) {
-        case UNKNOWN:
-          connection.check(SQLite.bind_null(stmt, i));
-          break;
-        case INT:
-          connection.check(SQLite.bind_int(stmt, i, ((Integer) pd.value).intValue()));
-          break;
-        case BOOL:
-          connection.check(SQLite.bind_int(stmt, i, ((Boolean) pd.value).booleanValue() ? 1 : 0));
-          break;
-        case LONG:
-          connection.check(SQLite.bind_int64(stmt, i, ((Long) pd.value).longValue()));
-          break;
-        case DATE:
-          connection.check(SQLite.bind_int64(stmt, i, ((java.util.Date) pd.value).getTime()));
-          break;
-        case TEXT:
-          connection.check(SQLite.bind_text(stmt, i,pd.value.toString(),-1,null));
-          break;
-      }
-      
-    } 
+    // A statement executed before has to be reset before it can be bound again
+    if (resultSet != null) {
+      resultSet.close();
+      resultSet = null;
+    }
+    if (active) {
+      SQLite.reset(stmt);
+      active = false;
+      connection.removeTimeout();
+    }
+    // Only parameters set while the statement was running are still unbound
+    bindDirtyParams();
+
     //Determine result type and execute as required
     boolean isResultSet = SQLite.column_count(stmt) > 0;
+    connection.begin();
+    active = true;
     if (isResultSet) {
       updateCount = -1;
       resultSet = new SQLiteResultSet(this);
     } else {
       resultSet = null;
-      // Should return SQLITE_DONE;
-      connection.check(SQLite.step(stmt));
-      updateCount = SQLite.changes(connection.handle);
-      if (fetchGeneratedKey) generatedKey = SQLite.last_insert_rowid(connection.handle);
- 
+      try {
+        // Should return SQLITE_DONE;
+        connection.check(step());
+        updateCount = SQLite.changes(connection.handle);
+        if (fetchGeneratedKey) generatedKey = SQLite.last_insert_rowid(connection.handle);
+      } finally {
+        // Reset right away so the next set* calls can bind directly
+        SQLite.reset(stmt);
+        active = false;
+        connection.removeTimeout();
+      }
     }
     return isResultSet;
   }
 
-  private void internalSetParam(int pIndex, Object pValue, BindType pBindType)
+  /**
+   * Steps the statement, under the query timeout if there is one.
+   */
+  int step()
   {
-    ParamDef pd = params.get(pIndex);
-    if (pd == null) {
-      pd = new ParamDef();
-      params.put(pIndex, pd);
+    if (queryTimeout == 0) return SQLite.step(stmt);
+    connection.startTimeout(queryTimeout * 1000L);
+    try {
+      return SQLite.step(stmt);
+    } finally {
+      connection.endTimeout();
     }
-    pd.value = pValue;
-    pd.bindType = pBindType;
   }
-  
-  // ***************************************************************************
-  class ParamDef
+
+  /**
+   * Runs the rows collected by {@link #addBatch()} through a bind/step/reset loop. In auto-commit mode the loop runs in
+   * one SAVEPOINT, so the whole batch costs a single commit instead of one per row. When a row fails, the rows before it
+   * are kept, just as they would be without batching, and their counts are reported by the BatchUpdateException.
+   */
+  private int[] executeParameterBatch() throws SQLException
+  {
+    int rows = batchRows;
+    int[] result = new int[rows];
+    boolean savepoint = connection.getAutoCommit();
+    if (savepoint) connection.check(SQLite.exec(connection.handle, "SAVEPOINT JDBC_BATCH;", null, null, null));
+    int row = 0;
+    try {
+      for (; row < rows; row++) {
+        int base = row * paramCount;
+        for (int i = 0; i < paramCount; i++) {
+          // Slots equal to the previous row are skipped by internalSetParam
+          BindType bt = batchTypes[base + i];
+          if (bt == null || bt == BindType.UNKNOWN || bt == BindType.TEXT || bt == BindType.BLOB) {
+            internalSetParam(i + 1, batchObjects[base + i], bt);
+          } else {
+            internalSetParam(i + 1, batchLongs[base + i], bt);
+          }
+        }
+        if (internalExecute()) throw new SQLException("Statement attempts to return a result set", "", SQLite.SQLITE_MISUSE);
+        result[row] = updateCount;
+      }
+    } catch (SQLException e) {
+      if (savepoint) SQLite.exec(connection.handle, "RELEASE JDBC_BATCH;", null, null, null);
+      throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), Arrays.copyOf(result, row));
+    } finally {
+      clearBatch();
+    }
+    if (savepoint) {
+      try {
+        connection.check(SQLite.exec(connection.handle, "RELEASE JDBC_BATCH;", null, null, null));
+      } catch (SQLException e) {
+        SQLite.exec(connection.handle, "ROLLBACK TO JDBC_BATCH;RELEASE JDBC_BATCH;", null, null, null);
+        throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(), new int[0]);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Sizes the parameter store for a freshly prepared statement. The arrays are only reallocated when the new statement
+   * has more parameters than any statement prepared before it.
+   */
+  private void allocateParams(int pCount)
+  {
+    // Batched rows belong to the previous statement
+    Arrays.fill(batchObjects, null);
+    batchRows = 0;
+    if (paramTypes.length < pCount) {
+      paramTypes = new BindType[pCount];
+      paramLongs = new long[pCount];
+      paramObjects = new Object[pCount];
+    } else {
+      Arrays.fill(paramTypes, null);
+      Arrays.fill(paramObjects, null);
+    }
+    int words = (pCount + 63) >> 6;
+    if (paramDirty.length < words) {
+      paramDirty = new long[words];
+    } else {
+      Arrays.fill(paramDirty, 0);
+    }
+    paramCount = pCount;
+    active = false;
+  }
+
+  private int checkParamIndex(int pIndex) throws SQLException
+  {
+    if (pIndex < 1 || pIndex > paramCount) {
+      throw new SQLException(String.format("Parameter index %d out of range [1..%d]", pIndex, paramCount), "", SQLite.SQLITE_RANGE);
+    }
+    return pIndex - 1;
+  }
+
+  private BindType getParamType(int pIndex) throws SQLException
+  {
+    BindType bt = paramTypes[checkParamIndex(pIndex)];
+    return bt != null ? bt : BindType.UNKNOWN;
+  }
+
+  private void internalSetParam(int pIndex, long pValue, BindType pBindType) throws SQLException
+  {
+    int i = checkParamIndex(pIndex);
+    if (paramTypes[i] == pBindType && paramLongs[i] == pValue) return;
+    paramTypes[i] = pBindType;
+    paramLongs[i] = pValue;
+    paramObjects[i] = null;
+    bindParam(i);
+  }
+
+  private void internalSetParam(int pIndex, Object pValue, BindType pBindType) throws SQLException
+  {
+    int i = checkParamIndex(pIndex);
+    BindType bt = pValue != null ? pBindType : BindType.UNKNOWN;
+    // Arrays and buffers compare by identity although their content may have changed
+    if (paramTypes[i] == bt && bt != BindType.BLOB && (pValue == null || pValue.equals(paramObjects[i]))) return;
+    paramTypes[i] = bt;
+    paramObjects[i] = pValue;
+    bindParam(i);
+  }
+
+  /**
+   * Binds parameter slot <code>i</code> straight away if the statement is idle. A running statement can't be bound, so
+   * the slot is marked dirty and bound by the next execute instead. Bindings survive sqlite3_reset, so slots that did
+   * not change since the previous execute never cross to native code again.
+   */
+  private void bindParam(int i) throws SQLException
+  {
+    if (active) {
+      paramDirty[i >> 6] |= 1L << i;
+    } else {
+      internalBind(i);
+      paramDirty[i >> 6] &= ~(1L << i);
+    }
+  }
+
+  private void bindDirtyParams() throws SQLException
+  {
+    for (int w = 0; w < paramDirty.length; w++) {
+      long bits = paramDirty[w];
+      while (bits != 0) {
+        internalBind((w << 6) + Long.numberOfTrailingZeros(bits));
+        bits &= bits - 1;
+      }
+      paramDirty[w] = 0;
+    }
+  }
+
+  private void internalBind(int i) throws SQLException
+  {
+    BindType bt = paramTypes[i];
+    switch (bt != null ? bt : BindType.UNKNOWN) {
+      case INT:
+      case BOOL:
+        connection.check(SQLite.bind_int(stmt, i + 1, (int) paramLongs[i]));
+        break;
+      case LONG:
+      case DATE:
+        connection.check(SQLite.bind_int64(stmt, i + 1, paramLongs[i]));
+        break;
+      case TEXT:
+        int length = bindBuffer.putUTF8(paramObjects[i].toString());
+        connection.check(SQLite.bind_text(stmt, i + 1, bindBuffer.pointer(), length, SQLite.SQLITE_TRANSIENT));
+        break;
+      case DOUBLE:
+        connection.check(SQLite.bind_double(stmt, i + 1, Double.longBitsToDouble(paramLongs[i])));
+        break;
+      case BLOB:
+        bindBlob(i, paramObjects[i]);
+        break;
+      default:
+        connection.check(SQLite.bind_null(stmt, i + 1));
+    }
+  }
+
+  /**
+   * Binds a byte[] or ByteBuffer value. Heap values go through the bind buffer; a direct ByteBuffer is bound straight
+   * from its own memory. SQLite copies the bytes either way.
+   */
+  private void bindBlob(int i, Object pValue) throws SQLException
+  {
+    Pointer data;
+    int length;
+    if (pValue instanceof byte[]) {
+      length = bindBuffer.put((byte[]) pValue);
+      data = bindBuffer.pointer();
+    } else {
+      ByteBuffer b = (ByteBuffer) pValue;
+      length = b.remaining();
+      if (b.isDirect() && length > 0) {
+        data = Native.getDirectBufferPointer(b).share(b.position());
+      } else {
+        length = bindBuffer.put(b);
+        data = bindBuffer.pointer();
+      }
+    }
+    connection.check(SQLite.bind_blob(stmt, i + 1, data, length, SQLite.SQLITE_TRANSIENT));
+  }
+
+  private static byte[] copyBytes(Object pValue)
+  {
+    if (pValue instanceof byte[]) return ((byte[]) pValue).clone();
+    ByteBuffer b = ((ByteBuffer) pValue).duplicate();
+    byte[] result = new byte[b.remaining()];
+    b.get(result);
+    return result;
+  }
+
+  /**
+   * Reads the stream into a direct buffer, which is bound without another copy.
+   */
+  private void internalSetStream(int pIndex, InputStream pValue, long pLength) throws SQLException
+  {
+    checkParamIndex(pIndex);
+    if (pValue == null) {
+      internalSetParam(pIndex, null, BindType.UNKNOWN);
+      return;
+    }
+    if (pLength < 0 || pLength > Integer.MAX_VALUE) {
+      throw new SQLException(String.format("Invalid stream length %d", pLength), "", SQLite.SQLITE_TOOBIG);
+    }
+    ByteBuffer value = ByteBuffer.allocateDirect((int) pLength);
+    byte[] buf = new byte[(int) Math.min(STREAM_CHUNK, Math.max(pLength, 1))];
+    try {
+      while (value.hasRemaining()) {
+        int n = pValue.read(buf, 0, Math.min(buf.length, value.remaining()));
+        if (n < 0) {
+          throw new SQLException(String.format("Stream ended after %d of %d bytes", value.position(), pLength), "", SQLite.SQLITE_IOERR);
+        }
+        value.put(buf, 0, n);
+      }
+    } catch (IOException e) {
+      throw new SQLException(e.getMessage(), "", SQLite.SQLITE_IOERR);
+    }
+    value.flip();
+    internalSetParam(pIndex, value, BindType.BLOB);
+  }
+
+  private void internalSetDate(int pIndex, java.util.Date pValue) throws SQLException
+  {
+    if (pValue == null) {
+      internalSetParam(pIndex, null, BindType.UNKNOWN);
+    } else {
+      internalSetParam(pIndex, pValue.getTime(), BindType.DATE);
+    }
+  }
+
+}
+
+// ***************************************************************************
+// *** BindBuffer
+// ***************************************************************************
+/**
+ * Native scratch memory for text and BLOB parameter values, owned by one statement and reused across executions. Values are bound
+ * with SQLITE_TRANSIENT, so SQLite takes its own copy and the buffer can be overwritten by the next bind. It only ever
+ * grows, to the largest value bound so far, unless explicitly released. The statement keeps a second instance for the
+ * UTF-8 text of the SQL it prepares.
+ */
+class BindBuffer
+{
+  private static final int INITIAL_SIZE = 256;
+
+  private Memory           memory;
+  private ByteBuffer       view;
+  // Size of memory, 0 without it
+  private long             capacity;
+
+  Pointer pointer()
+  {
+    return memory;
+  }
+
+  /**
+   * Encodes <code>value</code> as UTF-8 followed by a terminating zero.
+   * 
+   * @return number of bytes written, without the terminating zero
+   */
+  int putUTF8(String value) throws SQLException
+  {
+    int len = value.length();
+    // At most 3 bytes per char; a surrogate pair takes 4 bytes for 2 chars. Only count exactly when the worst case
+    // doesn't fit, so a large ASCII script doesn't reserve three times its size.
+    if (capacity < (long) len * 3 + 1) ensureCapacity(utf8Length(value) + 1);
+    ByteBuffer b = view;
+    int pos = 0;
+    int i = 0;
+    for (; i < len; i++) {
+      char c = value.charAt(i);
+      if (c >= 0x80) break;
+      b.put(pos++, (byte) c);
+    }
+    for (; i < len; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        b.put(pos++, (byte) c);
+      } else if (c < 0x800) {
+        b.put(pos++, (byte) (0xC0 | (c >> 6)));
+        b.put(pos++, (byte) (0x80 | (c & 0x3F)));
+      } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, value.charAt(++i));
+        b.put(pos++, (byte) (0xF0 | (cp >> 18)));
+        b.put(pos++, (byte) (0x80 | ((cp >> 12) & 0x3F)));
+        b.put(pos++, (byte) (0x80 | ((cp >> 6) & 0x3F)));
+        b.put(pos++, (byte) (0x80 | (cp & 0x3F)));
+      } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+        // Unpaired surrogate: same replacement as String.getBytes("UTF-8")
+        b.put(pos++, (byte) '?');
+      } else {
+        b.put(pos++, (byte) (0xE0 | (c >> 12)));
+        b.put(pos++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+        b.put(pos++, (byte) (0x80 | (c & 0x3F)));
+      }
+    }
+    b.put(pos, (byte) 0);
+    return pos;
+  }
+
+  /**
+   * Drops the native memory if it grew beyond <code>maxRetained</code> bytes.
+   */
+  void release(long maxRetained)
+  {
+    if (capacity > maxRetained) {
+      memory = null;
+      view = null;
+      capacity = 0;
+    }
+  }
+
+  /**
+   * Copies <code>value</code> into the buffer.
+   * 
+   * @return number of bytes written
+   */
+  int put(byte[] value) throws SQLException
+  {
+    ensureCapacity(value.length);
+    memory.write(0, value, 0, value.length);
+    return value.length;
+  }
+
+  /**
+   * Copies the remaining bytes of <code>value</code> into the buffer, leaving its position unchanged.
+   * 
+   * @return number of bytes written
+   */
+  int put(ByteBuffer value) throws SQLException
+  {
+    int len = value.remaining();
+    ensureCapacity(len);
+    view.clear();
+    view.put(value.duplicate());
+    return len;
+  }
+
+  private static long utf8Length(String value)
+  {
+    int len = value.length();
+    long result = 0;
+    for (int i = 0; i < len; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        result += 1;
+      } else if (c < 0x800) {
+        result += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(value.charAt(i + 1))) {
+        result += 4;
+        i++;
+      } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+        result += 1;
+      } else {
+        result += 3;
+      }
+    }
+    return result;
+  }
+
+  private void ensureCapacity(long size) throws SQLException
   {
-    Object   value;
-    BindType bindType;
+    if (capacity >= size) return;
+    // A ByteBuffer and the lengths SQLite takes are ints
+    if (size > Integer.MAX_VALUE) throw new SQLException(String.format("Value of %d bytes is too big", size), "", SQLite.SQLITE_TOOBIG);
+    long newCapacity = Math.max(capacity, INITIAL_SIZE);
+    while (newCapacity < size)
+      newCapacity <<= 1;
+    newCapacity = Math.min(newCapacity, Integer.MAX_VALUE);
+    memory = new Memory(newCapacity);
+    view = memory.getByteBuffer(0, newCapacity);
+    capacity = newCapacity;
   }
 
 }
@@ -0,0 +1,204 @@
+package org.sqlite.jdbc;
+
+import java.lang.ref.Cleaner;
+import java.lang.ref.WeakReference;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.sqlite.SQLite;
+
+import com.sun.jna.Pointer;
+
+/**
+ * Every sqlite3_stmt handle of one connection, so that closing the connection finalizes them all, whether they belong
+ * to a Statement, the statement cache or the connection itself.
+ * <p>
+ * A Statement that is garbage collected without being closed is noticed through a {@link Cleaner}. The cleaner thread
+ * only queues it: its handle is finalized by the next thread that prepares a statement on the connection, or closes it,
+ * so that SQLite is never called behind the back of a thread using the connection. With leak detection on, each
+ * Statement records where it was created, and the stack traces of the leaked ones are kept for
+ * {@link SQLiteConnection#getLeakedStatements()}.
+ */
+final class StatementRegistry
+{
+  // One daemon thread for all connections, it only runs the cleanup of unreachable connections and statements
+  static final Cleaner         CLEANER        = Cleaner.create();
+  // Leak traces kept, the oldest ones are dropped
+  private static final int     LEAKS_RETAINED = 100;
+
+  private final Set<Pointer>   live           = new HashSet<Pointer>();
+  private final Set<Owner>     owners         = new HashSet<Owner>();
+  // Filled by the cleaner thread
+  private final Queue<Owner>   leaked         = new ConcurrentLinkedQueue<Owner>();
+  private boolean              leakDetection  = false;
+  private long                 leakCount      = 0;
+  private final List<Throwable> leakTraces    = new ArrayList<Throwable>();
+
+  // ***************************************************************************
+  // *** Handles
+  // ***************************************************************************
+  /**
+   * Tracks a handle just prepared.
+   */
+  synchronized void add(Pointer stmt)
+  {
+    if (stmt != null) live.add(stmt);
+  }
+
+  /**
+   * Finalizes a tracked handle. Does nothing for a handle already finalized, e.g. by closing the connection.
+   */
+  synchronized void free(Pointer stmt)
+  {
+    if (stmt != null && live.remove(stmt)) SQLite.finalize(stmt);
+  }
+
+  /**
+   * Finalizes every handle left, before the connection is closed.
+   */
+  synchronized void freeAll()
+  {
+    for (Pointer stmt : live) SQLite.finalize(stmt);
+    live.clear();
+    owners.clear();
+    leaked.clear();
+  }
+
+  // ***************************************************************************
+  // *** Statements
+  // ***************************************************************************
+  /**
+   * Starts watching <code>statement</code> for being collected without close. Also frees the handles of the statements
+   * found leaked since the last call.
+   */
+  synchronized Owner register(SQLiteStatement statement)
+  {
+    drain();
+    Owner result = new Owner(this, statement, leakDetection ? new Throwable("Statement created here") : null);
+    result.cleanable = CLEANER.register(statement, result);
+    owners.add(result);
+    return result;
+  }
+
+  /**
+   * Stops watching a statement that was closed.
+   */
+  synchronized void unregister(Owner owner)
+  {
+    owner.closed = true;
+    owners.remove(owner);
+    owner.cleanable.clean();
+  }
+
+  /**
+   * @return the registered statements that are still reachable
+   */
+  synchronized List<SQLiteStatement> statements()
+  {
+    drain();
+    List<SQLiteStatement> result = new ArrayList<SQLiteStatement>(owners.size());
+    for (Owner o : owners) {
+      SQLiteStatement s = o.statement.get();
+      if (s != null) result.add(s);
+    }
+    return result;
+  }
+
+  synchronized void setLeakDetection(boolean enabled)
+  {
+    leakDetection = enabled;
+  }
+
+  synchronized boolean isLeakDetection()
+  {
+    return leakDetection;
+  }
+
+  synchronized long getLeakCount()
+  {
+    drain();
+    return leakCount;
+  }
+
+  synchronized List<Throwable> getLeakTraces()
+  {
+    drain();
+    return Collections.unmodifiableList(new ArrayList<Throwable>(leakTraces));
+  }
+
+  private void drain()
+  {
+    Owner o;
+    while ((o = leaked.poll()) != null) {
+      if (!owners.remove(o)) continue;
+      free(o.stmt);
+      leakCount++;
+      if (o.trace != null) {
+        if (leakTraces.size() == LEAKS_RETAINED) leakTraces.remove(0);
+        leakTraces.add(o.trace);
+      }
+    }
+  }
+
+  // ***************************************************************************
+  /**
+   * Cleanup state of one statement: must not reference the statement strongly, or it would never become unreachable.
+   */
+  static final class Owner implements Runnable
+  {
+    private final StatementRegistry              registry;
+    private final WeakReference<SQLiteStatement> statement;
+    private final Throwable                      trace;
+    private Cleaner.Cleanable                    cleanable;
+    // Current handle of the statement, kept up to date by it
+    Pointer                                      stmt;
+    volatile boolean                             closed;
+
+    Owner(StatementRegistry pRegistry, SQLiteStatement pStatement, Throwable pTrace)
+    {
+      super();
+      registry = pRegistry;
+      statement = new WeakReference<SQLiteStatement>(pStatement);
+      trace = pTrace;
+    }
+
+    /**
+     * Runs on the cleaner thread once the statement is unreachable, or on unregister.
+     */
+    public void run()
+    {
+      if (!closed) registry.leaked.add(this);
+    }
+  }
+
+  // ***************************************************************************
+  /**
+   * Cleanup state of one connection, run by {@link SQLiteConnection#close()} or, for a connection collected without
+   * close, by the cleaner thread.
+   */
+  static final class Closer implements Runnable
+  {
+    private final Pointer           db;
+    private final StatementRegistry statements;
+
+    Closer(Pointer pDb, StatementRegistry pStatements)
+    {
+      super();
+      db = pDb;
+      statements = pStatements;
+    }
+
+    public void run()
+    {
+      statements.freeAll();
+      SQLite.close(db);
+    }
+  }
+
+}
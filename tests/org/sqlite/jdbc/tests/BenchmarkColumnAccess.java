@@ -0,0 +1,92 @@
+package org.sqlite.jdbc.tests;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Cost of reading columns by name against reading them by index. The rows are prefetched with a large fetch size, so
+ * the getters don't call into SQLite and the difference is the name lookup. Not a unit test; run it from the command
+ * line:
+ *
+ * <pre>
+ * java -cp sqlite.jar:lib/jna.jar:tests-bin org.sqlite.jdbc.tests.BenchmarkColumnAccess [rows] [iterations]
+ * </pre>
+ *
+ * The default is 500K rows of 10 integer columns, read 5 times each way after one warm-up pass.
+ */
+public class BenchmarkColumnAccess
+{
+  private static final int      COLUMNS = 10;
+  private static final String[] NAMES   = new String[COLUMNS];
+  static {
+    for (int i = 0; i < COLUMNS; i++) NAMES[i] = "Column_" + i;
+  }
+
+  private interface Scan
+  {
+    long run(ResultSet rs) throws SQLException;
+  }
+
+  public static void main(String[] args) throws ClassNotFoundException, SQLException
+  {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+    Class.forName("org.sqlite.jdbc.Driver");
+    Connection conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+    try {
+      StringBuilder sql = new StringBuilder("WITH RECURSIVE C(X) AS (SELECT 1 UNION ALL SELECT X + 1 FROM C WHERE X < ");
+      sql.append(rows).append(") SELECT ");
+      for (int i = 0; i < COLUMNS; i++) sql.append(i > 0 ? ", " : "").append("X + ").append(i).append(" AS COLUMN_").append(i);
+      sql.append(" FROM C");
+      System.out.println(String.format("rows=%d columns=%d iterations=%d", rows, COLUMNS, iterations));
+
+      report("index", conn, sql.toString(), rows, iterations, new Scan() {
+        public long run(ResultSet rs) throws SQLException
+        {
+          long sum = 0;
+          while (rs.next()) {
+            for (int i = 1; i <= COLUMNS; i++) sum += rs.getLong(i);
+          }
+          return sum;
+        }
+      });
+      report("name ", conn, sql.toString(), rows, iterations, new Scan() {
+        public long run(ResultSet rs) throws SQLException
+        {
+          long sum = 0;
+          while (rs.next()) {
+            for (int i = 0; i < COLUMNS; i++) sum += rs.getLong(NAMES[i]);
+          }
+          return sum;
+        }
+      });
+    } finally {
+      conn.close();
+    }
+  }
+
+  private static void report(String name, Connection conn, String sql, int rows, int iterations, Scan scan)
+      throws SQLException
+  {
+    Statement s = conn.createStatement();
+    s.setFetchSize(1000);
+    try {
+      scan.run(s.executeQuery(sql));
+      long best = Long.MAX_VALUE;
+      for (int i = 0; i < iterations; i++) {
+        ResultSet rs = s.executeQuery(sql);
+        long start = System.nanoTime();
+        scan.run(rs);
+        best = Math.min(best, System.nanoTime() - start);
+      }
+      System.out.println(String.format("%s: best %d ms, %.1f ns/value", name, best / 1000000, (double) best / rows / COLUMNS));
+    } finally {
+      s.close();
+    }
+  }
+
+}
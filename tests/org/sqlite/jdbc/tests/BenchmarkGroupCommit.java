@@ -0,0 +1,107 @@
+package org.sqlite.jdbc.tests;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+
+import org.sqlite.jdbc.SQLiteConnection;
+import org.sqlite.jdbc.SQLiteGroupCommitExecutor;
+
+/**
+ * Single-row inserts from many threads: one shared connection in auto-commit mode, one transaction per insert, against
+ * {@link SQLiteGroupCommitExecutor}. Not a unit test; run it from the command line:
+ *
+ * <pre>
+ * java -cp sqlite.jar:lib/jna.jar:tests-bin org.sqlite.jdbc.tests.BenchmarkGroupCommit [threads] [writes per thread] [batch size] [delay ms]
+ * </pre>
+ *
+ * The default is 16 threads inserting 500 rows each into a file database, group commit batches of at most 1000 writes
+ * without extra delay: callers waiting on their futures already let the next batch fill up during a commit.
+ */
+public class BenchmarkGroupCommit
+{
+  private static final String DB_FILE = "bench-groupcommit.db";
+  private static final String INSERT  = "INSERT INTO T(THREAD, N, V) VALUES(?,?,?)";
+
+  public static void main(String[] args) throws Exception
+  {
+    int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+    final int writes = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+    int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+    long delay = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+    Class.forName("org.sqlite.jdbc.Driver");
+    File dbFile = new File(DB_FILE);
+    dbFile.delete();
+    final Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+    try {
+      Statement s = conn.createStatement();
+      s.execute("CREATE TABLE T(THREAD INTEGER, N INTEGER, V TEXT)");
+      s.close();
+      System.out.println(String.format("threads=%d writes=%d batch=%d delay=%d ms", threads, writes, batchSize, delay));
+
+      final PreparedStatement ps = conn.prepareStatement(INSERT);
+      report("autocommit  ", threads, writes, new Writer() {
+        public void write(int thread, int n) throws Exception
+        {
+          synchronized (conn) {
+            ps.setInt(1, thread);
+            ps.setInt(2, n);
+            ps.setString(3, "value");
+            ps.executeUpdate();
+          }
+        }
+      });
+      ps.close();
+
+      final SQLiteGroupCommitExecutor executor = new SQLiteGroupCommitExecutor(conn.unwrap(SQLiteConnection.class), batchSize, delay);
+      report("group commit", threads, writes, new Writer() {
+        public void write(int thread, int n) throws Exception
+        {
+          CompletableFuture<Integer> f = executor.submit(INSERT, thread, n, "value");
+          // Wait for every write, as a caller needing durability would
+          f.get();
+        }
+      });
+      System.out.println(String.format("group commit: %d writes in %d transactions", executor.getWriteCount(), executor.getBatchCount()));
+      executor.close();
+    } finally {
+      conn.close();
+      dbFile.delete();
+    }
+  }
+
+  private interface Writer
+  {
+    void write(int thread, int n) throws Exception;
+  }
+
+  private static void report(String name, int threads, final int writes, final Writer writer) throws InterruptedException
+  {
+    Thread[] workers = new Thread[threads];
+    long start = System.nanoTime();
+    for (int t = 0; t < threads; t++) {
+      final int thread = t;
+      workers[t] = new Thread() {
+        @Override
+        public void run()
+        {
+          try {
+            for (int n = 0; n < writes; n++) writer.write(thread, n);
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+      workers[t].start();
+    }
+    for (Thread t : workers) t.join();
+    long elapsed = System.nanoTime() - start;
+    long total = (long) threads * writes;
+    System.out.println(String.format("%s: %d ms, %.0f writes/s", name, elapsed / 1000000, total * 1e9 / elapsed));
+  }
+
+}
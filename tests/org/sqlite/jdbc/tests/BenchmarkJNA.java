@@ -0,0 +1,99 @@
+package org.sqlite.jdbc.tests;
+
+import java.io.File;
+
+import org.sqlite.SQLite;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.PointerByReference;
+
+/**
+ * Per-call overhead of the direct-mapped natives against the interface proxy for a <code>step</code> /
+ * <code>column_int64</code> scan. Not a unit test; run it from the command line:
+ *
+ * <pre>
+ * java -cp sqlite.jar:lib/jna.jar:tests-bin org.sqlite.jdbc.tests.BenchmarkJNA [rows] [iterations]
+ * </pre>
+ *
+ * The default is a 10M-row table scanned 5 times after one warm-up pass per mode.
+ */
+public class BenchmarkJNA
+{
+  private static final String DB_FILE = "bench-jna.db";
+
+  private interface Scan
+  {
+    long run(Pointer stmt);
+  }
+
+  public static void main(String[] args)
+  {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+    final SQLite.SQLiteAPI proxy = (SQLite.SQLiteAPI) Native.loadLibrary("sqlite3", SQLite.SQLiteAPI.class);
+    File dbFile = new File(DB_FILE);
+    dbFile.delete();
+    PointerByReference pdb = new PointerByReference();
+    SQLite.open(dbFile.getAbsolutePath(), pdb);
+    Pointer db = pdb.getValue();
+    try {
+      populate(db, rows);
+      System.out.println(String.format("rows=%d iterations=%d direct=%b", rows, iterations, SQLite.isDirectMapped()));
+
+      report("proxy ", db, rows, iterations, new Scan() {
+        public long run(Pointer stmt)
+        {
+          long sum = 0;
+          while (proxy.sqlite3_step(stmt) == SQLite.SQLITE_ROW)
+            sum += proxy.sqlite3_column_int64(stmt, 0);
+          return sum;
+        }
+      });
+      report("direct", db, rows, iterations, new Scan() {
+        public long run(Pointer stmt)
+        {
+          long sum = 0;
+          while (SQLite.step(stmt) == SQLite.SQLITE_ROW)
+            sum += SQLite.column_int64(stmt, 0);
+          return sum;
+        }
+      });
+    } finally {
+      SQLite.close(db);
+      dbFile.delete();
+    }
+  }
+
+  private static void populate(Pointer db, int rows)
+  {
+    String sql = String.format("CREATE TABLE T(ID INTEGER NOT NULL);"
+        + "INSERT INTO T(ID) WITH RECURSIVE C(X) AS (SELECT 1 UNION ALL SELECT X + 1 FROM C WHERE X < %d) SELECT X FROM C;", rows);
+    if (SQLite.exec(db, sql, null, null, null) != SQLite.SQLITE_OK) throw new RuntimeException(SQLite.errmsg(db));
+  }
+
+  private static void report(String name, Pointer db, int rows, int iterations, Scan scan)
+  {
+    PointerByReference pstmt = new PointerByReference();
+    SQLite.prepare_v2(db, "SELECT ID FROM T", -1, pstmt, null);
+    Pointer stmt = pstmt.getValue();
+    try {
+      scan.run(stmt);
+      SQLite.reset(stmt);
+      long best = Long.MAX_VALUE;
+      for (int i = 0; i < iterations; i++) {
+        long start = System.nanoTime();
+        scan.run(stmt);
+        best = Math.min(best, System.nanoTime() - start);
+        SQLite.reset(stmt);
+      }
+      // Two native calls per row: step and column_int64
+      System.out.println(String.format("%s: best %d ms, %.1f ns/row, %.1f ns/call", name, best / 1000000, (double) best / rows,
+          (double) best / rows / 2));
+    } finally {
+      SQLite.finalize(stmt);
+    }
+  }
+
+}
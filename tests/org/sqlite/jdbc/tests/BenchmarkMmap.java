@@ -0,0 +1,117 @@
+package org.sqlite.jdbc.tests;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Point-lookup latency with the database read through read() into SQLite's page cache, and through a memory mapping
+ * (<code>mmap=true</code>). The page cache is kept small, so that most lookups have to fetch pages from the OS page cache,
+ * which holds the whole file after the warm-up pass. Not a unit test; run it from the command line:
+ *
+ * <pre>
+ * java -cp sqlite.jar:lib/jna.jar:tests-bin org.sqlite.jdbc.tests.BenchmarkMmap [rows] [lookups] [rounds]
+ * </pre>
+ *
+ * The default is a 200K-row table with 400-byte values, about 90 MB, 1 MB of page cache and 200K random lookups per
+ * round, best of 3 rounds per mode, the modes alternating.
+ */
+public class BenchmarkMmap
+{
+  private static final String DB_FILE    = "bench-mmap.db";
+  private static final String CACHE_SIZE = "-1024";
+
+  public static void main(String[] args) throws Exception
+  {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+    int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+    int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+    Class.forName("org.sqlite.jdbc.Driver");
+    File dbFile = new File(DB_FILE);
+    dbFile.delete();
+    try {
+      populate(rows);
+      System.out.println(String.format("rows=%d size=%d MB lookups=%d rounds=%d", rows, dbFile.length() >> 20, lookups, rounds));
+      String[] modes = { "false", "true" };
+      long[][] best = new long[modes.length][];
+      // Warm-up: reads the whole file into the OS page cache and compiles the lookup path
+      lookup("false", rows, rows);
+      for (int r = 0; r < rounds; r++) {
+        for (int m = 0; m < modes.length; m++) {
+          long[] latencies = lookup(modes[m], rows, lookups);
+          if (best[m] == null || sum(latencies) < sum(best[m])) best[m] = latencies;
+        }
+      }
+      for (int m = 0; m < modes.length; m++) {
+        long[] l = best[m];
+        Arrays.sort(l);
+        System.out.println(String.format("mmap=%-5s: mean %.2f us, p50 %.2f us, p99 %.2f us", modes[m], sum(l) / 1000.0 / l.length,
+            l[l.length / 2] / 1000.0, l[l.length * 99 / 100] / 1000.0));
+      }
+    } finally {
+      dbFile.delete();
+    }
+  }
+
+  private static void populate(int rows) throws SQLException
+  {
+    Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+    try {
+      Statement s = conn.createStatement();
+      s.execute("CREATE TABLE T(ID INTEGER PRIMARY KEY, V TEXT)");
+      s.close();
+      conn.setAutoCommit(false);
+      char[] value = new char[400];
+      Arrays.fill(value, 'x');
+      PreparedStatement ps = conn.prepareStatement("INSERT INTO T(ID, V) VALUES(?,?)");
+      for (int i = 0; i < rows; i++) {
+        ps.setInt(1, i);
+        ps.setString(2, new String(value));
+        ps.executeUpdate();
+      }
+      ps.close();
+      conn.commit();
+    } finally {
+      conn.close();
+    }
+  }
+
+  /**
+   * @return the latency of every lookup, in nanoseconds
+   */
+  private static long[] lookup(String mmap, int rows, int lookups) throws SQLException
+  {
+    long[] result = new long[lookups];
+    Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE + "?cache_size=" + CACHE_SIZE + "&mmap=" + mmap);
+    try {
+      Random random = new Random(42);
+      PreparedStatement ps = conn.prepareStatement("SELECT V FROM T WHERE ID = ?");
+      for (int n = 0; n < lookups; n++) {
+        long start = System.nanoTime();
+        ps.setInt(1, random.nextInt(rows));
+        ResultSet rs = ps.executeQuery();
+        if (!rs.next() || rs.getString(1) == null) throw new IllegalStateException("Row not found");
+        result[n] = System.nanoTime() - start;
+      }
+      ps.close();
+    } finally {
+      conn.close();
+    }
+    return result;
+  }
+
+  private static long sum(long[] values)
+  {
+    long result = 0;
+    for (long v : values) result += v;
+    return result;
+  }
+
+}
@@ -0,0 +1,123 @@
+package org.sqlite.jdbc.tests;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.sqlite.SQLite;
+
+/**
+ * Cost of reading a row through the typed getters of SQLiteResultSet: every column is read with its typed getter and
+ * checked with <code>wasNull()</code>, then read again with <code>getObject</code>, as mapping layers tend to do. Not a
+ * unit test; run it from the command line:
+ *
+ * <pre>
+ * java -cp sqlite.jar:lib/jna.jar:tests-bin org.sqlite.jdbc.tests.BenchmarkResultSet [rows] [iterations] [fetchSize]
+ * </pre>
+ *
+ * The default is a 200K-row, 20-column table (integers, reals, text, a quarter of them NULL) scanned 5 times after one
+ * warm-up pass, row at a time.
+ * <p>
+ * With <code>-Dorg.sqlite.jna.count=true</code> it also reports the native calls per row of one scan, see
+ * {@link SQLite#PROP_COUNT_CALLS}. The counted calls go through the proxy, so the timings of such a run don't compare
+ * with a direct-mapped one.
+ */
+public class BenchmarkResultSet
+{
+  private static final String DB_FILE = "bench-resultset.db";
+  private static final int    COLUMNS = 20;
+
+  public static void main(String[] args) throws ClassNotFoundException, SQLException
+  {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+    int fetchSize = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+
+    Class.forName("org.sqlite.jdbc.Driver");
+    File dbFile = new File(DB_FILE);
+    dbFile.delete();
+    Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+    try {
+      populate(conn, rows);
+      System.out.println(String.format("rows=%d columns=%d iterations=%d fetchSize=%d", rows, COLUMNS, iterations, fetchSize));
+      Statement s = conn.createStatement();
+      s.setFetchSize(fetchSize);
+      long calls = SQLite.getNativeCalls();
+      scan(s);
+      if (calls >= 0) {
+        calls = SQLite.getNativeCalls() - calls;
+        System.out.println(String.format("%d native calls, %.2f calls/row, %.2f calls/value", calls, (double) calls / rows,
+            (double) calls / rows / COLUMNS));
+      }
+      long best = Long.MAX_VALUE;
+      for (int i = 0; i < iterations; i++) {
+        long start = System.nanoTime();
+        scan(s);
+        best = Math.min(best, System.nanoTime() - start);
+      }
+      s.close();
+      System.out.println(String.format("best %d ms, %.1f ns/row, %.1f ns/value", best / 1000000, (double) best / rows,
+          (double) best / rows / COLUMNS));
+    } finally {
+      conn.close();
+      dbFile.delete();
+    }
+  }
+
+  private static void populate(Connection conn, int rows) throws SQLException
+  {
+    StringBuilder create = new StringBuilder("CREATE TABLE T(");
+    StringBuilder select = new StringBuilder("SELECT ");
+    for (int i = 0; i < COLUMNS; i++) {
+      String value;
+      switch (i % 4) {
+        case 0:
+          value = "X * " + i;
+          break;
+        case 1:
+          value = "X / 7.0";
+          break;
+        case 2:
+          value = "'row ' || X";
+          break;
+        default:
+          value = "CASE WHEN X % 2 = 0 THEN NULL ELSE X END";
+      }
+      create.append(i > 0 ? "," : "").append("C").append(i);
+      select.append(i > 0 ? "," : "").append(value);
+    }
+    Statement s = conn.createStatement();
+    s.execute(create.append(")").toString());
+    s.execute(String.format("INSERT INTO T WITH RECURSIVE C(X) AS (SELECT 1 UNION ALL SELECT X + 1 FROM C WHERE X < %d) %s FROM C",
+        rows, select));
+    s.close();
+  }
+
+  private static long scan(Statement s) throws SQLException
+  {
+    long checksum = 0;
+    ResultSet rs = s.executeQuery("SELECT * FROM T");
+    while (rs.next()) {
+      for (int i = 1; i <= COLUMNS; i++) {
+        switch ((i - 1) % 4) {
+          case 1:
+            checksum += (long) rs.getDouble(i);
+            break;
+          case 2:
+            checksum += rs.getString(i).length();
+            break;
+          default:
+            checksum += rs.getLong(i);
+        }
+        if (rs.wasNull()) checksum++;
+        if (rs.getObject(i) == null) checksum++;
+      }
+    }
+    rs.close();
+    return checksum;
+  }
+
+}
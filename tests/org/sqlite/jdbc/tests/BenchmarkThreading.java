@@ -0,0 +1,119 @@
+package org.sqlite.jdbc.tests;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+
+/**
+ * Cost of SQLite's connection mutexes: every thread looks up rows by primary key through its own connection, opened once
+ * with <code>threading=serialized</code> (SQLITE_OPEN_FULLMUTEX, the library default) and once with
+ * <code>threading=confined</code> (SQLITE_OPEN_NOMUTEX). The connections are never shared, so the mutexes are never
+ * contended; the difference is what taking them on every call costs. Not a unit test; run it from the command line:
+ *
+ * <pre>
+ * java -cp sqlite.jar:lib/jna.jar:tests-bin org.sqlite.jdbc.tests.BenchmarkThreading [threads] [lookups per thread] [rounds]
+ * </pre>
+ *
+ * The default is 8 threads doing 200K lookups each in a 10K-row table, best of 3 rounds per mode, the modes alternating.
+ */
+public class BenchmarkThreading
+{
+  private static final String DB_FILE = "bench-threading.db";
+  private static final int    ROWS    = 10000;
+
+  public static void main(String[] args) throws Exception
+  {
+    int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+    int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+    int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+    Class.forName("org.sqlite.jdbc.Driver");
+    File dbFile = new File(DB_FILE);
+    dbFile.delete();
+    try {
+      populate();
+      System.out.println(String.format("threads=%d lookups=%d rounds=%d", threads, lookups, rounds));
+      String[] modes = { "serialized", "confined" };
+      long[] best = { Long.MAX_VALUE, Long.MAX_VALUE };
+      // Warm-up, then alternate so that neither mode profits from running last
+      run(modes[0], threads, lookups / 10);
+      for (int r = 0; r < rounds; r++) {
+        for (int m = 0; m < modes.length; m++) best[m] = Math.min(best[m], run(modes[m], threads, lookups));
+      }
+      long total = (long) threads * lookups;
+      for (int m = 0; m < modes.length; m++) {
+        System.out.println(String.format("%-10s: %d ms, %.0f lookups/s, %.0f ns/lookup per thread", modes[m], best[m] / 1000000,
+            total * 1e9 / best[m], (double) best[m] / lookups));
+      }
+      System.out.println(String.format("confined saves %.1f%%", 100.0 * (best[0] - best[1]) / best[0]));
+    } finally {
+      dbFile.delete();
+    }
+  }
+
+  private static void populate() throws SQLException
+  {
+    Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+    try {
+      Statement s = conn.createStatement();
+      s.execute("CREATE TABLE T(ID INTEGER PRIMARY KEY, V TEXT)");
+      s.close();
+      conn.setAutoCommit(false);
+      PreparedStatement ps = conn.prepareStatement("INSERT INTO T(ID, V) VALUES(?,?)");
+      for (int i = 0; i < ROWS; i++) {
+        ps.setInt(1, i);
+        ps.setString(2, "value " + i);
+        ps.executeUpdate();
+      }
+      ps.close();
+      conn.commit();
+    } finally {
+      conn.close();
+    }
+  }
+
+  /**
+   * @return elapsed nanoseconds, from the start of the first thread to the end of the last one
+   */
+  private static long run(final String mode, int threads, final int lookups) throws Exception
+  {
+    final Connection[] connections = new Connection[threads];
+    for (int t = 0; t < threads; t++) {
+      connections[t] = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE + "?threading=" + mode);
+    }
+    Thread[] workers = new Thread[threads];
+    long start = System.nanoTime();
+    for (int t = 0; t < threads; t++) {
+      final Connection conn = connections[t];
+      workers[t] = new Thread() {
+        @Override
+        public void run()
+        {
+          try {
+            Random random = new Random(getId());
+            PreparedStatement ps = conn.prepareStatement("SELECT V FROM T WHERE ID = ?");
+            for (int n = 0; n < lookups; n++) {
+              ps.setInt(1, random.nextInt(ROWS));
+              ResultSet rs = ps.executeQuery();
+              if (!rs.next() || rs.getString(1) == null) throw new IllegalStateException("Row not found");
+            }
+            ps.close();
+          } catch (SQLException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+      workers[t].start();
+    }
+    for (Thread t : workers) t.join();
+    long elapsed = System.nanoTime() - start;
+    for (Connection c : connections) c.close();
+    return elapsed;
+  }
+
+}
@@ -1,22 +1,41 @@
 package org.sqlite.jdbc.tests;
 import static org.junit.Assert.assertEquals;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.sql.BatchUpdateException;
+import java.sql.Blob;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Savepoint;
 import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 
 import junit.framework.Assert;
 
@@ -25,6 +44,14 @@ import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.sqlite.SQLite;
+import org.sqlite.jdbc.SQLiteBlob;
+import org.sqlite.jdbc.SQLiteBusyHandler;
+import org.sqlite.jdbc.SQLiteConnection;
+import org.sqlite.jdbc.SQLiteDataSource;
+import org.sqlite.jdbc.SQLiteGroupCommitExecutor;
+import org.sqlite.jdbc.SQLiteResultSet;
+import org.sqlite.jdbc.SQLiteStatement;
 
 public class TestJDBC
 {
@@ -298,4 +325,1404 @@ public class TestJDBC
 
   }
 
+  @Test
+  public void testGetStringUTF8() throws SQLException
+  {
+    Statement s = conn.createStatement();
+    try {
+      s.execute("CREATE TABLE TEXTS(ID INTEGER NOT NULL, TXT TEXT, CONSTRAINT TEXTS_PK PRIMARY KEY (ID));");
+      s.execute("INSERT INTO TEXTS(ID,TXT) VALUES(1,'plain ascii');");
+      s.execute("INSERT INTO TEXTS(ID,TXT) VALUES(2,'\u0436\u00e9 \u4e2d\u6587 \ud83d\ude00');");
+      s.execute("INSERT INTO TEXTS(ID,TXT) VALUES(3,'');");
+      s.execute("INSERT INTO TEXTS(ID,TXT) VALUES(4,NULL);");
+
+      ResultSet rs = s.executeQuery("SELECT TXT FROM TEXTS ORDER BY ID");
+      Assert.assertTrue(rs.next());
+      assertEquals("plain ascii", rs.getString(1));
+      Assert.assertTrue(rs.next());
+      assertEquals("\u0436\u00e9 \u4e2d\u6587 \ud83d\ude00", rs.getString(1));
+      assertEquals("\u0436\u00e9 \u4e2d\u6587 \ud83d\ude00", rs.getObject(1));
+      Assert.assertTrue(rs.next());
+      assertEquals("", rs.getString(1));
+      Assert.assertFalse(rs.wasNull());
+      Assert.assertTrue(rs.next());
+      Assert.assertNull(rs.getString(1));
+      Assert.assertTrue(rs.wasNull());
+    } finally {
+      s.close();
+    }
+  }
+
+  @Test
+  public void testSetStringUTF8() throws SQLException
+  {
+    StringBuilder large = new StringBuilder();
+    for (int i = 0; i < 1000; i++) large.append("\u00e9\u4e2d\ud83d\ude00x");
+    String[] values = { "ascii", "\u0436\u00e9 \u4e2d\u6587 \ud83d\ude00", "", large.toString() };
+
+    Statement s = conn.createStatement();
+    try {
+      s.execute("CREATE TABLE BOUND_TEXTS(ID INTEGER NOT NULL, T1 TEXT, T2 TEXT, T3 TEXT, T4 TEXT);");
+    } finally {
+      s.close();
+    }
+    PreparedStatement ps = conn.prepareStatement("INSERT INTO BOUND_TEXTS(ID,T1,T2,T3,T4) VALUES(1,?,?,?,?);");
+    try {
+      for (int i = 0; i < values.length; i++) ps.setString(i + 1, values[i]);
+      ps.executeUpdate();
+    } finally {
+      ps.close();
+    }
+    ps = conn.prepareStatement("SELECT T1,T2,T3,T4,LENGTH(CAST(T2 AS BLOB)) FROM BOUND_TEXTS WHERE ID = 1;");
+    try {
+      ResultSet rs = ps.executeQuery();
+      Assert.assertTrue(rs.next());
+      for (int i = 0; i < values.length; i++) assertEquals(values[i], rs.getString(i + 1));
+      assertEquals(16, rs.getInt(5));
+    } finally {
+      ps.close();
+    }
+  }
+
+  @Test
+  public void testReexecutePreparedStatement() throws SQLException
+  {
+    Statement s = conn.createStatement();
+    try {
+      s.execute("CREATE TABLE PARAMS(ID INTEGER NOT NULL, N BIGINT, B INTEGER, T TEXT, CONSTRAINT PARAMS_PK PRIMARY KEY (ID));");
+    } finally {
+      s.close();
+    }
+    PreparedStatement ps = conn.prepareStatement("INSERT INTO PARAMS(ID,N,B,T) VALUES(?,?,?,?);");
+    try {
+      assertEquals(4, ps.getParameterMetaData().getParameterCount());
+      for (int i = 1; i <= 3; i++) {
+        ps.setInt(1, i);
+        ps.setLong(2, Long.MAX_VALUE - i);
+        ps.setBoolean(3, i % 2 == 0);
+        ps.setString(4, i == 2 ? null : "row " + i);
+        assertEquals(1, ps.executeUpdate());
+      }
+      try {
+        ps.setInt(5, 0);
+        Assert.fail("Parameter index out of range accepted");
+      } catch (SQLException e) {
+        assertEquals(25, e.getErrorCode());
+      }
+    } finally {
+      ps.close();
+    }
+    ps = conn.prepareStatement("SELECT N,B,T FROM PARAMS WHERE ID = ?;");
+    try {
+      for (int i = 1; i <= 3; i++) {
+        ps.setObject(1, Integer.valueOf(i));
+        ResultSet rs = ps.executeQuery();
+        Assert.assertTrue(rs.next());
+        assertEquals(Long.MAX_VALUE - i, rs.getLong(1));
+        assertEquals(i % 2 == 0, rs.getBoolean(2));
+        assertEquals(i == 2 ? null : "row " + i, rs.getString(3));
+        Assert.assertFalse(rs.next());
+      }
+    } finally {
+      ps.close();
+    }
+  }
+
+  @Test
+  public void testClearParameters() throws SQLException
+  {
+    Statement s = conn.createStatement();
+    try {
+      s.execute("CREATE TABLE CLEARED(ID INTEGER NOT NULL, A TEXT, B TEXT);");
+    } finally {
+      s.close();
+    }
+    PreparedStatement ps = conn.prepareStatement("INSERT INTO CLEARED(ID,A,B) VALUES(?,?,?);");
+    try {
+      ps.setString(2, "kept");
+      ps.setString(3, "b");
+      for (int i = 1; i <= 2; i++) {
+        // Only the first parameter changes; A and B stay bound from the first row
+        ps.setInt(1, i);
+        ps.executeUpdate();
+      }
+      ps.clearParameters();
+      ps.setInt(1, 3);
+      ps.executeUpdate();
+    } finally {
+      ps.close();
+    }
+    ps = conn.prepareStatement("SELECT A,B FROM CLEARED WHERE ID = ?;");
+    try {
+      ps.setInt(1, 2);
+      ResultSet rs = ps.executeQuery();
+      Assert.assertTrue(rs.next());
+      assertEquals("kept", rs.getString(1));
+      assertEquals("b", rs.getString(2));
+
+      // Parameter changed while the previous result set is still open
+      ps.setInt(1, 3);
+      rs = ps.executeQuery();
+      Assert.assertTrue(rs.next());
+      Assert.assertNull(rs.getString(1));
+      Assert.assertNull(rs.getString(2));
+    } finally {
+      ps.close();
+    }
+  }
+
+  @Test
+  public void testPreparedStatementBatch() throws SQLException
+  {
+    Statement s = conn.createStatement();
+    try {
+      s.execute("CREATE TABLE BATCHED(ID INTEGER NOT NULL, NAME TEXT, CONSTRAINT BATCHED_PK PRIMARY KEY (ID));");
+    } finally {
+      s.close();
+    }
+    PreparedStatement ps = conn.prepareStatement("INSERT INTO BATCHED(ID,NAME) VALUES(?,?);");
+    try {
+      for (int i = 1; i <= 1000; i++) {
+        ps.setInt(1, i);
+        ps.setString(2, i % 10 == 0 ? null : "name " + i);
+        ps.addBatch();
+      }
+      int[] counts = ps.executeBatch();
+      assertEquals(1000, counts.length);
+      for (int c : counts) assertEquals(1, c);
+      Assert.assertTrue(conn.getAutoCommit());
+
+      // Row 3 violates the primary key: rows 1 and 2 are kept
+      for (int i : new int[] { 1001, 1002, 1, 1003 }) {
+        ps.setInt(1, i);
+        ps.setString(2, "dup");
+        ps.addBatch();
+      }
+      try {
+        ps.executeBatch();
+        Assert.fail("Primary key violation not reported");
+      } catch (BatchUpdateException e) {
+        assertEquals(2, e.getUpdateCounts().length);
+      }
+      Assert.assertTrue(conn.getAutoCommit());
+    } finally {
+      ps.close();
+    }
+    s = conn.createStatement();
+    try {
+      ResultSet rs = s.executeQuery("SELECT COUNT(*), COUNT(NAME) FROM BATCHED;");
+      Assert.assertTrue(rs.next());
+      assertEquals(1002, rs.getInt(1));
+      assertEquals(902, rs.getInt(2));
+    } finally {
+      s.close();
+    }
+  }
+
+  @Test
+  public void testStatementCache() throws SQLException
+  {
+    Connection c = DriverManager.getConnection("jdbc:sqlite:jdbctest.db?statement_cache_size=2");
+    try {
+      SQLiteConnection sc = c.unwrap(SQLiteConnection.class);
+      assertEquals(2, sc.getStatementCacheSize());
+      for (int i = 1; i <= 3; i++) {
+        PreparedStatement ps = c.prepareStatement("SELECT ? + 1;");
+        try {
+          ps.setInt(1, i);
+          ResultSet rs = ps.executeQuery();
+          Assert.assertTrue(rs.next());
+          assertEquals(i + 1, rs.getInt(1));
+        } finally {
+          ps.close();
+        }
+      }
+      assertEquals(1, sc.getStatementCacheMisses());
+      assertEquals(2, sc.getStatementCacheHits());
+
+      // A cached statement comes back without the previous bindings
+      PreparedStatement ps = c.prepareStatement("SELECT ? IS NULL;");
+      ps.setInt(1, 1);
+      ps.close();
+      ps = c.prepareStatement("SELECT ? IS NULL;");
+      try {
+        ResultSet rs = ps.executeQuery();
+        Assert.assertTrue(rs.next());
+        Assert.assertTrue(rs.getBoolean(1));
+      } finally {
+        ps.close();
+      }
+      assertEquals(3, sc.getStatementCacheHits());
+    } finally {
+      c.close();
+    }
+  }
+
+  @Test
+  public void testExecuteScript() throws SQLException
+  {
+    StringBuilder script = new StringBuilder("CREATE TABLE SCRIPTED(ID INTEGER NOT NULL, T TEXT);\n");
+    script.append("CREATE TRIGGER SCRIPTED_T AFTER INSERT ON SCRIPTED BEGIN UPDATE SCRIPTED SET T = T || ';' WHERE ID = NEW.ID; END;\n");
+    for (int i = 1; i <= 500; i++) {
+      script.append(String.format("INSERT INTO SCRIPTED(ID,T) VALUES(%d,'a;b \u00e9 %d');\n", i, i));
+    }
+    script.append("DELETE FROM SCRIPTED WHERE ID > 400");
+
+    SQLiteStatement s = conn.createStatement().unwrap(SQLiteStatement.class);
+    try {
+      int[] counts = s.executeScript(new StringReader(script.toString()));
+      assertEquals(503, counts.length);
+      assertEquals(1, counts[2]);
+      assertEquals(100, counts[502]);
+
+      counts = s.executeScript("DELETE FROM SCRIPTED WHERE ID > 300;DELETE FROM SCRIPTED WHERE ID > 200;");
+      assertEquals(2, counts.length);
+      assertEquals(100, counts[0]);
+      assertEquals(100, counts[1]);
+
+      ResultSet rs = s.executeQuery("SELECT COUNT(*), (SELECT T FROM SCRIPTED WHERE ID = 99) FROM SCRIPTED;");
+      Assert.assertTrue(rs.next());
+      assertEquals(200, rs.getInt(1));
+      assertEquals("a;b \u00e9 99;", rs.getString(2));
+
+      try {
+        s.executeScript("INSERT INTO SCRIPTED(ID) VALUES(1);INSERT INTO NO_SUCH_TABLE VALUES(1);");
+        Assert.fail("Missing table not reported");
+      } catch (BatchUpdateException e) {
+        assertEquals(1, e.getUpdateCounts().length);
+      }
+    } finally {
+      s.close();
+    }
+  }
+
+  @Test
+  public void testLargeScript() throws SQLException
+  {
+    SQLiteStatement s = conn.createStatement().unwrap(SQLiteStatement.class);
+    try {
+      s.executeUpdate("CREATE TABLE LARGE_SCRIPT(ID INTEGER NOT NULL, T TEXT)");
+      // Warm up, then compare a script with four times the statements: a linear walk takes about four times as long,
+      // copying the rest of the script for each statement sixteen times as long
+      long small = timeScript(s, 5000);
+      small = timeScript(s, 25000);
+      long large = timeScript(s, 100000);
+      Assert.assertTrue(String.format("%d ms for 25000 statements, %d ms for 100000", small / 1000000, large / 1000000),
+          large < small * 10);
+      ResultSet rs = s.executeQuery("SELECT COUNT(*) FROM LARGE_SCRIPT");
+      Assert.assertTrue(rs.next());
+      assertEquals(260000, rs.getInt(1));
+    } finally {
+      s.close();
+    }
+  }
+
+  private static long timeScript(SQLiteStatement s, int statements) throws SQLException
+  {
+    StringBuilder script = new StringBuilder("BEGIN;\n");
+    for (int i = 0; i < statements; i++) {
+      script.append("INSERT INTO LARGE_SCRIPT(ID,T) VALUES(").append(i).append(",'a;b -- /* not a comment');\n");
+    }
+    script.append("COMMIT;");
+    String text = script.toString();
+    long start = System.nanoTime();
+    assertEquals(statements + 2, s.executeScript(text).length);
+    assertEquals(statements + 2, s.executeScript(new StringReader(text.replace("INSERT INTO", "-- ;\nINSERT INTO"))).length);
+    return System.nanoTime() - start;
+  }
+
+  @Test
+  public void testFetchSize() throws SQLException
+  {
+    Statement s = conn.createStatement();
+    try {
+      s.execute("CREATE TABLE FETCHED(ID INTEGER NOT NULL, V)");
+      s.execute("INSERT INTO FETCHED(ID,V) VALUES(1,NULL),(2,42),(3,-9223372036854775808),(4,0.1),(5,1.0),(6,1e20),"
+          + "(7,-1.5e-7),(8,123456.789),(9,'12abc'),(10,' -3.5e2x'),(11,'\u00e9t\u00e9'),(12,X'00FF41'),(13,''),"
+          + "(14,'99999999999999999999'),(15,2.0/3),(16,1e-300/7),(17,'0x10'),(18,' 1.5e400'),(19,X'3132'),(20,9.95)");
+
+      List<Object> expected = readFetched(s, 0);
+      // 7 leaves a partly filled last buffer
+      for (int fetchSize : new int[] { 7, 4 }) {
+        List<Object> actual = readFetched(s, fetchSize);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+          Object e = expected.get(i);
+          Object a = actual.get(i);
+          if (e instanceof byte[]) {
+            Assert.assertTrue("value " + i, Arrays.equals((byte[]) e, (byte[]) a));
+          } else {
+            assertEquals("value " + i, e, a);
+          }
+        }
+      }
+      assertEquals(20 * 9, expected.size());
+      assertEquals(4, s.getFetchSize());
+    } finally {
+      s.close();
+    }
+  }
+
+  private static List<Object> readFetched(Statement s, int fetchSize) throws SQLException
+  {
+    List<Object> result = new ArrayList<Object>();
+    s.setFetchSize(fetchSize);
+    ResultSet rs = s.executeQuery("SELECT V FROM FETCHED ORDER BY ID");
+    assertEquals(fetchSize, rs.getFetchSize());
+    assertEquals(0, rs.getRow());
+    while (rs.next()) {
+      result.add(rs.getRow());
+      // First, before any conversion changes the column type reported by SQLite
+      Object o = rs.getObject(1);
+      result.add(o instanceof byte[] ? o : String.valueOf(o) + (o == null ? "" : o.getClass().getName()));
+      result.add(rs.getString(1));
+      result.add(rs.wasNull());
+      result.add(rs.getLong(1));
+      result.add(rs.getInt(1));
+      result.add(rs.getDouble(1));
+      result.add(rs.getBytes(1));
+      result.add(rs.getBoolean(1));
+    }
+    Assert.assertFalse(rs.next());
+    assertEquals(0, rs.getRow());
+    rs.close();
+    return result;
+  }
+
+  @Test
+  public void testFindColumn() throws SQLException
+  {
+    StringBuilder sql = new StringBuilder("SELECT 1 AS Id, 'x' AS Name, 2 AS id");
+    for (int i = 0; i < 40; i++) sql.append(", ").append(i).append(" AS col_").append(i);
+    Statement s = conn.createStatement();
+    try {
+      ResultSet rs = s.executeQuery(sql.toString());
+      Assert.assertTrue(rs.next());
+      // The first of two columns with the same name wins
+      assertEquals(1, rs.findColumn("ID"));
+      assertEquals(1, rs.getInt("iD"));
+      assertEquals(2, rs.findColumn("name"));
+      assertEquals(2, rs.findColumn(new String("NAME")));
+      assertEquals("x", rs.getString("Name"));
+      for (int i = 0; i < 40; i++) {
+        assertEquals(i, rs.getInt("COL_" + i));
+        assertEquals(i + 4, rs.findColumn("Col_" + i));
+      }
+      try {
+        rs.findColumn("col_40");
+        Assert.fail("Missing column not reported");
+      } catch (SQLException e) {
+        // expected
+      }
+    } finally {
+      s.close();
+    }
+  }
+
+  @Test
+  public void testBinaryStream() throws SQLException, IOException
+  {
+    Statement s = conn.createStatement();
+    try {
+      s.execute("CREATE TABLE BLOBS(ID INTEGER NOT NULL, B BLOB)");
+      s.execute("INSERT INTO BLOBS(ID,B) VALUES(1,randomblob(3000000)),(2,X''),(3,NULL)");
+      for (int fetchSize : new int[] { 0, 10 }) {
+        s.setFetchSize(fetchSize);
+        ResultSet rs = s.executeQuery("SELECT B FROM BLOBS ORDER BY ID");
+        SQLiteResultSet srs = rs.unwrap(SQLiteResultSet.class);
+
+        Assert.assertTrue(rs.next());
+        byte[] expected = rs.getBytes(1);
+        assertEquals(3000000, expected.length);
+        ByteBuffer view = srs.getByteBuffer(1);
+        Assert.assertTrue(view.isReadOnly());
+        assertEquals(expected.length, view.remaining());
+        byte[] copy = new byte[view.remaining()];
+        view.get(copy);
+        Assert.assertTrue(Arrays.equals(expected, copy));
+
+        InputStream in = rs.getBinaryStream(1);
+        byte[] streamed = new byte[expected.length];
+        int n = 0;
+        for (int r; (r = in.read(streamed, n, Math.min(65536, streamed.length - n))) > 0;) n += r;
+        assertEquals(expected.length, n);
+        assertEquals(-1, in.read());
+        Assert.assertTrue(Arrays.equals(expected, streamed));
+
+        // Reading the value as text may convert it in place; the rows of a fetch are copies
+        InputStream converted = rs.getBinaryStream(1);
+        rs.getString(1);
+        if (fetchSize == 0) {
+          try {
+            converted.read();
+            Assert.fail("Reading a stream of a value read as text not reported");
+          } catch (IOException e) {
+            // expected
+          }
+        } else {
+          converted.read();
+        }
+
+        InputStream stale = rs.getBinaryStream(1);
+        Assert.assertTrue(rs.next());
+        try {
+          stale.read();
+          Assert.fail("Reading a stream of a previous row not reported");
+        } catch (IOException e) {
+          // expected
+        }
+        assertEquals(-1, rs.getBinaryStream(1).read());
+        Assert.assertFalse(rs.wasNull());
+
+        Assert.assertTrue(rs.next());
+        Assert.assertNull(rs.getBinaryStream(1));
+        Assert.assertTrue(rs.wasNull());
+        Assert.assertNull(srs.getByteBuffer(1));
+        rs.close();
+      }
+    } finally {
+      s.close();
+    }
+  }
+
+  @Test
+  public void testIncrementalBlob() throws SQLException, IOException
+  {
+    final int size = 5 * 1024 * 1024 + 17;
+    Statement s = conn.createStatement();
+    try {
+      s.execute("CREATE TABLE ARTIFACTS(ID INTEGER PRIMARY KEY, NAME TEXT, DATA BLOB, THUMB BLOB)");
+      PreparedStatement ps = conn.prepareStatement("INSERT INTO ARTIFACTS(NAME,THUMB,DATA) VALUES(?,?,?)");
+      ps.setString(1, "big");
+      ps.setBinaryStream(2, new PatternStream(1000), 1000);
+      ps.setBinaryStream(3, new PatternStream(size), (long) size);
+      assertEquals(1, ps.executeUpdate());
+
+      // A stream shorter than announced is reported when it is set
+      try {
+        ps.setBinaryStream(3, new PatternStream(10), 20);
+        Assert.fail("Short stream not reported");
+      } catch (SQLException e) {
+        // expected
+      }
+      ps.close();
+
+      ResultSet rs = s.executeQuery("SELECT COUNT(*) FROM ARTIFACTS");
+      Assert.assertTrue(rs.next());
+      assertEquals(1, rs.getInt(1));
+
+      rs = s.executeQuery("SELECT ID, DATA, THUMB, substr(DATA, 1, 4) FROM ARTIFACTS");
+      Assert.assertTrue(rs.next());
+      long id = rs.getLong(1);
+      Blob blob = rs.getBlob(2);
+      Assert.assertTrue(blob instanceof SQLiteBlob);
+      assertEquals(size, blob.length());
+      byte[] part = blob.getBytes(size - 99, 200);
+      assertEquals(100, part.length);
+      for (int i = 0; i < part.length; i++) assertEquals(PatternStream.at(size - 100 + i), part[i]);
+      InputStream in = blob.getBinaryStream();
+      byte[] buf = new byte[100000];
+      long pos = 0;
+      for (int n; (n = in.read(buf)) > 0;) {
+        for (int i = 0; i < n; i++) {
+          if (buf[i] != PatternStream.at(pos + i)) Assert.fail("Mismatch at " + (pos + i));
+        }
+        pos += n;
+      }
+      assertEquals(size, pos);
+      blob.free();
+      assertEquals(1000, rs.getBlob(3).length());
+      Blob copy = rs.getBlob(4);
+      Assert.assertFalse(copy instanceof SQLiteBlob);
+      assertEquals(4, copy.length());
+      rs.close();
+
+      SQLiteBlob writable = conn.unwrap(SQLiteConnection.class).openBlob("ARTIFACTS", "DATA", id, true);
+      writable.setBytes(11, new byte[] { 1, 2, 3 });
+      try {
+        writable.setBytes(size, new byte[] { 1, 2 });
+        Assert.fail("Growing a BLOB not reported");
+      } catch (SQLException e) {
+        // expected
+      }
+      writable.free();
+      rs = s.executeQuery("SELECT hex(substr(DATA, 11, 3)) FROM ARTIFACTS");
+      Assert.assertTrue(rs.next());
+      assertEquals("010203", rs.getString(1));
+
+      // Left open on purpose: closing the connection closes it
+      conn.unwrap(SQLiteConnection.class).openBlob("ARTIFACTS", "THUMB", id, false);
+    } finally {
+      s.close();
+    }
+  }
+
+  @Test
+  public void testStreamParameters() throws SQLException, IOException
+  {
+    Statement s = conn.createStatement();
+    try {
+      s.execute("CREATE TABLE STREAMS(ID INTEGER PRIMARY KEY, A BLOB, B BLOB)");
+
+      // Bound as values, whatever the shape of the statement
+      PreparedStatement ps = conn.prepareStatement("INSERT INTO STREAMS(ID, A, B) SELECT 1, ?, ? UNION ALL SELECT 2, ?2, ?1");
+      ps.setBinaryStream(1, new ByteArrayInputStream("AAAA".getBytes()), 4);
+      ps.setBinaryStream(2, new ByteArrayInputStream("BBBBBB".getBytes()), 4);
+      assertEquals(2, ps.executeUpdate());
+      // and still bound when executed again
+      s.execute("DELETE FROM STREAMS");
+      assertEquals(2, ps.executeUpdate());
+      ps.close();
+      ps = conn.prepareStatement("UPDATE STREAMS SET B = ?");
+      ps.setBlob(1, new ByteArrayInputStream("cc".getBytes()), 2);
+      assertEquals(2, ps.executeUpdate());
+      ps.close();
+      ResultSet rs = s.executeQuery("SELECT CAST(A AS TEXT) || CAST(B AS TEXT) FROM STREAMS ORDER BY ID");
+      Assert.assertTrue(rs.next());
+      assertEquals("AAAAcc", rs.getString(1));
+      Assert.assertTrue(rs.next());
+      assertEquals("BBBBcc", rs.getString(1));
+      rs.close();
+
+      // Without holding the value in memory: reserve it, then write it in place
+      ps = conn.prepareStatement("INSERT INTO STREAMS(ID, A) VALUES(3, zeroblob(?))");
+      ps.setInt(1, 100000);
+      ps.executeUpdate();
+      ps.close();
+      SQLiteBlob blob = conn.unwrap(SQLiteConnection.class).openBlob("STREAMS", "A", 3, true);
+      OutputStream out = blob.setBinaryStream(1);
+      InputStream in = new PatternStream(100000);
+      byte[] buf = new byte[8192];
+      for (int n; (n = in.read(buf)) > 0;) out.write(buf, 0, n);
+      out.close();
+      blob.free();
+      rs = s.executeQuery("SELECT substr(A, 99999, 2) FROM STREAMS WHERE ID = 3");
+      Assert.assertTrue(rs.next());
+      Assert.assertTrue(Arrays.equals(new byte[] { PatternStream.at(99998), PatternStream.at(99999) }, rs.getBytes(1)));
+      rs.close();
+    } finally {
+      s.close();
+    }
+  }
+
+  @Test
+  public void testSetDoubleAndBytes() throws SQLException
+  {
+    Statement s = conn.createStatement();
+    try {
+      s.execute("CREATE TABLE VALS(ID INTEGER NOT NULL, R, B)");
+      PreparedStatement ps = conn.prepareStatement("INSERT INTO VALS(ID,R,B) VALUES(?,?,?)");
+      ByteBuffer direct = ByteBuffer.allocateDirect(8);
+      direct.put(new byte[] { 9, 8, 7, 6, 5 }).flip();
+      direct.position(1);
+      ByteBuffer heap = ByteBuffer.wrap(new byte[] { 0, 1, 2, 3 }, 1, 2);
+      Object[][] rows = {
+          { 1.5, new byte[] { 1, 2, 3 } },
+          { 0.1f, new byte[0] },
+          { Double.valueOf(-1e300), direct },
+          { Float.valueOf(2.25f), heap },
+          { null, null } };
+      for (int i = 0; i < rows.length; i++) {
+        ps.setInt(1, i);
+        if (i == 0) {
+          ps.setDouble(2, (Double) rows[i][0]);
+          ps.setBytes(3, (byte[]) rows[i][1]);
+        } else if (i == 1) {
+          ps.setFloat(2, (Float) rows[i][0]);
+          ps.setBytes(3, (byte[]) rows[i][1]);
+        } else {
+          ps.setObject(2, rows[i][0]);
+          ps.setObject(3, rows[i][1]);
+        }
+        assertEquals(1, ps.executeUpdate());
+      }
+      // Rebinding the same array after changing it must not keep the old value
+      byte[] reused = { 1 };
+      ps.setInt(1, 10);
+      ps.setBytes(3, reused);
+      ps.executeUpdate();
+      reused[0] = 2;
+      ps.setInt(1, 11);
+      ps.setBytes(3, reused);
+      ps.executeUpdate();
+      // Same for a batch
+      for (int i = 20; i < 23; i++) {
+        reused[0] = (byte) i;
+        ps.setInt(1, i);
+        ps.setDouble(2, i / 4.0);
+        ps.setBytes(3, reused);
+        ps.addBatch();
+      }
+      ps.executeBatch();
+      ps.close();
+      assertEquals(1, direct.position());
+
+      ResultSet rs = s.executeQuery("SELECT R, B, typeof(R), typeof(B) FROM VALS ORDER BY ID");
+      byte[][] blobs = { { 1, 2, 3 }, { }, { 8, 7, 6, 5 }, { 1, 2 } };
+      double[] reals = { 1.5, 0.1f, -1e300, 2.25 };
+      for (int i = 0; i < blobs.length; i++) {
+        Assert.assertTrue(rs.next());
+        assertEquals(reals[i], rs.getDouble(1), 0);
+        Assert.assertTrue(Arrays.equals(blobs[i], rs.getBytes(2)));
+        assertEquals("real", rs.getString(3));
+        assertEquals("blob", rs.getString(4));
+      }
+      Assert.assertTrue(rs.next());
+      assertEquals("null", rs.getString(3));
+      assertEquals("null", rs.getString(4));
+      for (int i : new int[] { 1, 2, 20, 21, 22 }) {
+        Assert.assertTrue(rs.next());
+        Assert.assertTrue(Arrays.equals(new byte[] { (byte) i }, rs.getBytes(2)));
+      }
+      Assert.assertFalse(rs.next());
+      rs.close();
+    } finally {
+      s.close();
+    }
+  }
+
+  @Test
+  public void testDataSource() throws SQLException
+  {
+    SQLiteDataSource ds = new SQLiteDataSource();
+    ds.setDatabaseName("jdbctest.db");
+    ds.setMaxPoolSize(2);
+    ds.setLoginTimeout(1);
+    ds.setPragma("cache_size", "-4000");
+    assertEquals("-4000", ds.getPragma("CACHE_SIZE"));
+    try {
+      ds.setPragma("synchronous", "SOMETIMES");
+      Assert.fail("Invalid pragma value accepted");
+    } catch (IllegalArgumentException e) {
+      // expected, checked by SQLiteConfig as for a URL
+    }
+    try {
+      ds.setPragma("busy_timeout", "100");
+      Assert.fail("Driver setting accepted as a pragma");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      Connection c1 = ds.getConnection();
+      Statement s = c1.createStatement();
+      s.execute("CREATE TABLE POOLED(ID INTEGER NOT NULL)");
+      ResultSet rs = s.executeQuery("PRAGMA cache_size");
+      Assert.assertTrue(rs.next());
+      assertEquals(-4000, rs.getInt(1));
+      SQLiteConnection physical = c1.unwrap(SQLiteConnection.class);
+      // Statements and metadata lead back to the logical connection, not to the physical one
+      Assert.assertTrue(s.getConnection() == c1);
+      Assert.assertTrue(c1.getMetaData().getConnection() == c1);
+
+      // A transaction left open is rolled back on return, statements are closed with the logical connection
+      c1.setAutoCommit(false);
+      PreparedStatement ps = c1.prepareStatement("INSERT INTO POOLED(ID) VALUES(?)");
+      ps.setInt(1, 1);
+      Assert.assertTrue(ps.getConnection() == c1);
+      ps.executeUpdate();
+      c1.close();
+      Assert.assertTrue(c1.isClosed());
+      Assert.assertFalse(c1.isValid(0));
+      try {
+        c1.createStatement();
+        Assert.fail("Use of a closed logical connection not reported");
+      } catch (SQLException e) {
+        // expected
+      }
+      assertEquals(1, ds.getIdleCount());
+
+      // The same physical connection, with its statement cache, is lent again
+      Connection c2 = ds.getConnection();
+      Assert.assertTrue(c2.getAutoCommit());
+      Assert.assertTrue(physical == c2.unwrap(SQLiteConnection.class));
+      long hits = physical.getStatementCacheHits();
+      c2.prepareStatement("INSERT INTO POOLED(ID) VALUES(?)").close();
+      assertEquals(hits + 1, physical.getStatementCacheHits());
+      s = c2.createStatement();
+      rs = s.executeQuery("SELECT COUNT(*) FROM POOLED");
+      Assert.assertTrue(rs.next());
+      assertEquals(0, rs.getInt(1));
+      s.close();
+
+      Connection c3 = ds.getConnection();
+      Assert.assertTrue(physical != c3.unwrap(SQLiteConnection.class));
+      assertEquals(2, ds.getOpenCount());
+      try {
+        ds.getConnection();
+        Assert.fail("Exhausted pool not reported");
+      } catch (SQLException e) {
+        assertEquals(SQLite.SQLITE_BUSY, e.getErrorCode());
+      }
+      c3.close();
+      c3.close();
+      assertEquals(1, ds.getIdleCount());
+      c3 = ds.getConnection();
+      c3.createStatement().execute("DROP TABLE POOLED");
+      c3.close();
+      c2.close();
+      assertEquals(2, ds.getIdleCount());
+    } finally {
+      ds.close();
+    }
+    assertEquals(0, ds.getOpenCount());
+  }
+
+  @Test
+  public void testReadOnlyPool() throws Exception
+  {
+    final SQLiteDataSource ds = new SQLiteDataSource();
+    ds.setDatabaseName("jdbctest-wal.db");
+    ds.setReadOnlyPoolSize(2);
+    ds.setLoginTimeout(1);
+    try {
+      Connection w = ds.getConnection();
+      Statement s = w.createStatement();
+      ResultSet rs = s.executeQuery("PRAGMA journal_mode");
+      Assert.assertTrue(rs.next());
+      assertEquals("wal", rs.getString(1));
+      s.execute("CREATE TABLE W(ID INTEGER NOT NULL)");
+      s.execute("INSERT INTO W(ID) VALUES(1)");
+      w.setAutoCommit(false);
+      s.execute("INSERT INTO W(ID) VALUES(2)");
+
+      // Readers see the last commit while the writer is in a transaction
+      Connection r = ds.getConnection();
+      r.setReadOnly(true);
+      rs = r.createStatement().executeQuery("SELECT COUNT(*) FROM W");
+      Assert.assertTrue(rs.next());
+      assertEquals(1, rs.getInt(1));
+      Assert.assertTrue(r.unwrap(SQLiteConnection.class).isReadOnly());
+      try {
+        r.createStatement().execute("INSERT INTO W(ID) VALUES(3)");
+        Assert.fail("Write through a reader not reported");
+      } catch (SQLException e) {
+        assertEquals(SQLite.SQLITE_READONLY, e.getErrorCode());
+      }
+      r.close();
+
+      // A second writer waits for the writer connection
+      Connection w2 = ds.getConnection();
+      try {
+        w2.createStatement();
+        Assert.fail("Busy writer not reported");
+      } catch (SQLException e) {
+        assertEquals(SQLite.SQLITE_BUSY, e.getErrorCode());
+      }
+      w.commit();
+      w.close();
+      Assert.assertFalse(w2.unwrap(SQLiteConnection.class).isReadOnly());
+      w2.setReadOnly(true);
+      Assert.assertTrue(w2.unwrap(SQLiteConnection.class).isReadOnly());
+      w2.close();
+
+      // Setting the auto-commit mode doesn't bind, and a switch outside a transaction keeps it
+      Connection m = ds.getConnection();
+      m.setAutoCommit(false);
+      Assert.assertFalse(m.getAutoCommit());
+      w2 = ds.getConnection();
+      w2.createStatement().close();
+      w2.close();
+      rs = m.createStatement().executeQuery("SELECT COUNT(*) FROM W");
+      Assert.assertTrue(rs.next());
+      try {
+        m.setReadOnly(true);
+        Assert.fail("Switch inside a transaction not reported");
+      } catch (SQLException e) {
+        assertEquals(SQLite.SQLITE_MISUSE, e.getErrorCode());
+      }
+      m.commit();
+      m.setReadOnly(true);
+      Assert.assertFalse(m.getAutoCommit());
+      Assert.assertTrue(m.unwrap(SQLiteConnection.class).isReadOnly());
+      Assert.assertFalse(m.unwrap(SQLiteConnection.class).getAutoCommit());
+      m.close();
+
+      // Concurrent writers queue instead of failing with SQLITE_BUSY
+      final List<Exception> errors = new ArrayList<Exception>();
+      Thread[] threads = new Thread[4];
+      for (int t = 0; t < threads.length; t++) {
+        threads[t] = new Thread() {
+          @Override
+          public void run()
+          {
+            try {
+              for (int i = 0; i < 25; i++) {
+                Connection c = ds.getConnection();
+                try {
+                  c.createStatement().execute("INSERT INTO W(ID) VALUES(10)");
+                } finally {
+                  c.close();
+                }
+              }
+            } catch (Exception e) {
+              synchronized (errors) {
+                errors.add(e);
+              }
+            }
+          }
+        };
+        threads[t].start();
+      }
+      for (Thread t : threads) t.join();
+      assertEquals(0, errors.size());
+      r = ds.getConnection();
+      r.setReadOnly(true);
+      rs = r.createStatement().executeQuery("SELECT COUNT(*) FROM W");
+      Assert.assertTrue(rs.next());
+      assertEquals(102, rs.getInt(1));
+      r.close();
+    } finally {
+      ds.close();
+      for (String suffix : new String[] { "", "-wal", "-shm" }) new File("jdbctest-wal.db" + suffix).delete();
+    }
+  }
+
+  @Test
+  public void testGroupCommit() throws Exception
+  {
+    Statement s = conn.createStatement();
+    s.execute("CREATE TABLE GC(ID INTEGER PRIMARY KEY, V TEXT)");
+    s.close();
+    final SQLiteGroupCommitExecutor executor = new SQLiteGroupCommitExecutor(conn.unwrap(SQLiteConnection.class), 100, 5);
+    try {
+      // Only the failing write of a batch is rolled back
+      CompletableFuture<Integer> first = executor.submit("INSERT INTO GC(ID,V) VALUES(?,?)", 1, "a");
+      CompletableFuture<Integer> duplicate = executor.submit("INSERT INTO GC(ID,V) VALUES(?,?)", 1, "b");
+      CompletableFuture<Integer> last = executor.submit("INSERT INTO GC(ID,V) VALUES(?,?)", 2, null);
+      assertEquals(1, (int) first.get());
+      assertEquals(1, (int) last.get());
+      try {
+        duplicate.get();
+        Assert.fail("Constraint violation not reported");
+      } catch (ExecutionException e) {
+        Assert.assertTrue(e.getCause() instanceof SQLException);
+      }
+
+      final List<CompletableFuture<Integer>> futures = new ArrayList<CompletableFuture<Integer>>();
+      Thread[] threads = new Thread[8];
+      for (int t = 0; t < threads.length; t++) {
+        final int base = 1000 * (t + 1);
+        threads[t] = new Thread() {
+          @Override
+          public void run()
+          {
+            for (int i = 0; i < 200; i++) {
+              CompletableFuture<Integer> f = executor.submit("INSERT INTO GC(ID,V) VALUES(?,?)", base + i, "x");
+              synchronized (futures) {
+                futures.add(f);
+              }
+            }
+          }
+        };
+        threads[t].start();
+      }
+      for (Thread t : threads) t.join();
+      for (CompletableFuture<Integer> f : futures) assertEquals(1, (int) f.get());
+      assertEquals(1602, executor.getWriteCount());
+      Assert.assertTrue(executor.getBatchCount() < 1602);
+    } finally {
+      executor.close();
+    }
+    try {
+      executor.submit("DELETE FROM GC");
+      Assert.fail("Submit after close not reported");
+    } catch (RejectedExecutionException e) {
+      // expected
+    }
+
+    // An unchecked exception stops the executor, failing its batch instead of leaving it pending
+    SQLiteGroupCommitExecutor broken = new SQLiteGroupCommitExecutor(conn.unwrap(SQLiteConnection.class), 100, 5);
+    CompletableFuture<Integer> before = broken.submit("INSERT INTO GC(ID,V) VALUES(?,?)", 9001, "c");
+    CompletableFuture<Integer> bad = broken.submit(null);
+    try {
+      bad.get();
+      Assert.fail("Failed write not reported");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof SQLException);
+    }
+    try {
+      broken.submit("DELETE FROM GC");
+      Assert.fail("Submit after failure not reported");
+    } catch (RejectedExecutionException e) {
+      // expected
+    }
+    broken.close();
+    Assert.assertTrue(before.isDone());
+    int committed = before.isCompletedExceptionally() ? 0 : 1;
+    Assert.assertTrue(conn.getAutoCommit());
+    s = conn.createStatement();
+    ResultSet check = s.executeQuery("SELECT COUNT(*) FROM GC WHERE ID = 9001");
+    Assert.assertTrue(check.next());
+    assertEquals(committed, check.getInt(1));
+    s.close();
+
+    Assert.assertTrue(conn.getAutoCommit());
+    s = conn.createStatement();
+    ResultSet rs = s.executeQuery("SELECT COUNT(*), MAX(V) FROM GC WHERE ID < 1000");
+    Assert.assertTrue(rs.next());
+    assertEquals(2, rs.getInt(1));
+    assertEquals("a", rs.getString(2));
+    s.execute("DROP TABLE GC");
+    s.close();
+  }
+
+  @Test
+  public void testBusyHandler() throws Exception
+  {
+    Statement s = conn.createStatement();
+    s.execute("CREATE TABLE BUSY(ID INTEGER)");
+    Connection locker = DriverManager.getConnection("jdbc:sqlite:jdbctest.db");
+    Connection waiter = DriverManager.getConnection("jdbc:sqlite:jdbctest.db?busy_timeout=200");
+    final Statement lock = locker.createStatement();
+    Statement insert = waiter.createStatement();
+    try {
+      SQLiteConnection sw = waiter.unwrap(SQLiteConnection.class);
+      assertEquals(200, sw.getBusyTimeout());
+      lock.execute("BEGIN IMMEDIATE");
+      long start = System.nanoTime();
+      try {
+        insert.execute("INSERT INTO BUSY(ID) VALUES(1)");
+        Assert.fail("Lock held by another connection not reported");
+      } catch (SQLException e) {
+        assertEquals(SQLite.SQLITE_BUSY, e.getErrorCode());
+      }
+      Assert.assertTrue(System.nanoTime() - start >= 150000000L);
+
+      // The lock is released while the handler backs off
+      sw.setBusyHandler(new SQLiteBusyHandler.Backoff(1, 20, 5000));
+      assertEquals(0, sw.getBusyTimeout());
+      Thread releaser = new Thread() {
+        @Override
+        public void run()
+        {
+          try {
+            Thread.sleep(100);
+            lock.execute("COMMIT");
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+      releaser.start();
+      insert.execute("INSERT INTO BUSY(ID) VALUES(1)");
+      releaser.join();
+      Assert.assertTrue(sw.getBusyRetries() > 0);
+      Assert.assertTrue(sw.getBusyWaitTime() >= 50);
+    } finally {
+      insert.close();
+      lock.close();
+      waiter.close();
+      locker.close();
+    }
+    s.execute("DROP TABLE BUSY");
+    s.close();
+    try {
+      DriverManager.getConnection("jdbc:sqlite:jdbctest.db?busy_backoff=true").close();
+      Assert.fail("busy_backoff without busy_timeout accepted");
+    } catch (SQLException e) {
+      assertEquals(SQLite.SQLITE_MISUSE, e.getErrorCode());
+    }
+  }
+
+  @Test
+  public void testQueryTimeout() throws Exception
+  {
+    final String endless = "WITH RECURSIVE C(X) AS (SELECT 1 UNION ALL SELECT X + 1 FROM C) SELECT COUNT(*) FROM C";
+    Statement s = conn.createStatement();
+    s.setQueryTimeout(1);
+    assertEquals(1, s.getQueryTimeout());
+    long start = System.nanoTime();
+    try {
+      s.executeQuery(endless).next();
+      Assert.fail("Query timeout not reported");
+    } catch (SQLTimeoutException e) {
+      assertEquals(SQLite.SQLITE_INTERRUPT, e.getErrorCode());
+    }
+    long elapsed = (System.nanoTime() - start) / 1000000;
+    Assert.assertTrue("Timed out after " + elapsed + " ms", elapsed >= 900 && elapsed < 5000);
+    // Neither the statement nor the connection stay interrupted
+    ResultSet rs = s.executeQuery("SELECT 1");
+    Assert.assertTrue(rs.next());
+    assertEquals(1, rs.getInt(1));
+    // The limit is per step: time spent between steps doesn't count, neither do the steps of untimed statements while
+    // the result set is open
+    rs = s.executeQuery("SELECT 1 UNION ALL SELECT 2");
+    Assert.assertTrue(rs.next());
+    Thread.sleep(1100);
+    Statement untimed = conn.createStatement();
+    ResultSet counted = untimed.executeQuery("WITH RECURSIVE C(X) AS (SELECT 1 UNION ALL SELECT X + 1 FROM C WHERE X < 200000) SELECT COUNT(*) FROM C");
+    Assert.assertTrue(counted.next());
+    assertEquals(200000, counted.getInt(1));
+    untimed.close();
+    Assert.assertTrue(rs.next());
+    assertEquals(2, rs.getInt(1));
+    Assert.assertFalse(rs.next());
+    s.close();
+
+    final Statement cancelled = conn.createStatement();
+    Thread canceller = new Thread() {
+      @Override
+      public void run()
+      {
+        try {
+          Thread.sleep(200);
+          cancelled.cancel();
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    canceller.start();
+    try {
+      cancelled.executeQuery(endless).next();
+      Assert.fail("Cancel not reported");
+    } catch (SQLTimeoutException e) {
+      // expected
+    }
+    canceller.join();
+    rs = cancelled.executeQuery("SELECT 2");
+    Assert.assertTrue(rs.next());
+    assertEquals(2, rs.getInt(1));
+    cancelled.close();
+  }
+
+  @Test
+  public void testOpenFlags() throws SQLException
+  {
+    Statement s = conn.createStatement();
+    s.execute("CREATE TABLE O(ID INTEGER NOT NULL)");
+    s.close();
+
+    // Read-only, also through an SQLite URI
+    for (String url : new String[] { "jdbc:sqlite:jdbctest.db?mode=ro", "jdbc:sqlite:file:jdbctest.db?uri=true&mode=ro" }) {
+      Connection ro = DriverManager.getConnection(url);
+      Assert.assertTrue(ro.isReadOnly());
+      s = ro.createStatement();
+      try {
+        s.execute("INSERT INTO O(ID) VALUES(1)");
+        Assert.fail("Write to read-only connection not reported");
+      } catch (SQLException e) {
+        assertEquals(SQLite.SQLITE_READONLY, e.getErrorCode());
+      }
+      s.close();
+      ro.close();
+    }
+
+    // Without create
+    try {
+      DriverManager.getConnection("jdbc:sqlite:jdbctest-missing.db?mode=rw");
+      Assert.fail("Missing file not reported");
+    } catch (SQLException e) {
+      assertEquals(SQLite.SQLITE_CANTOPEN, e.getErrorCode());
+    }
+    Assert.assertFalse(new File("jdbctest-missing.db").exists());
+
+    // Named in-memory database, shared between connections through the shared cache
+    String memory = "jdbc:sqlite:file:jdbctest-memory?uri=true&mode=memory&cache=shared";
+    Connection m1 = DriverManager.getConnection(memory + "&threading=confined");
+    Connection m2 = DriverManager.getConnection(memory + "&threading=serialized");
+    s = m1.createStatement();
+    s.execute("CREATE TABLE M(ID INTEGER NOT NULL)");
+    s.execute("INSERT INTO M(ID) VALUES(1)");
+    s.close();
+    s = m2.createStatement();
+    ResultSet rs = s.executeQuery("SELECT COUNT(*) FROM M");
+    Assert.assertTrue(rs.next());
+    assertEquals(1, rs.getInt(1));
+    s.close();
+    m2.close();
+    m1.close();
+    Assert.assertFalse(new File("jdbctest-memory").exists());
+    m1 = DriverManager.getConnection("jdbc:sqlite:jdbctest-memory?mode=memory");
+    s = m1.createStatement();
+    s.execute("CREATE TABLE M(ID INTEGER NOT NULL)");
+    s.close();
+    m1.close();
+    Assert.assertFalse(new File("jdbctest-memory").exists());
+
+    try {
+      DriverManager.getConnection("jdbc:sqlite:jdbctest.db?threading=none");
+      Assert.fail("Invalid threading mode not reported");
+    } catch (SQLException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testConfig() throws SQLException
+  {
+    String url = "jdbc:sqlite:jdbctest-config.db?Cache_Size=-4000&journal_mode=Wal";
+    Properties info = new Properties();
+    info.setProperty("cache_size", "100");
+    info.setProperty("synchronous", "normal");
+    info.setProperty("temp_store", "MEMORY");
+    info.setProperty("foreign_keys", "off");
+    info.setProperty("user", "ignored");
+
+    DriverPropertyInfo[] properties = DriverManager.getDriver(url).getPropertyInfo(url, info);
+    Map<String, DriverPropertyInfo> byName = new HashMap<String, DriverPropertyInfo>();
+    for (DriverPropertyInfo p : properties) byName.put(p.name, p);
+    assertEquals("WAL", byName.get("journal_mode").value);
+    Assert.assertTrue(Arrays.asList(byName.get("journal_mode").choices).contains("DELETE"));
+    assertEquals("-4000", byName.get("cache_size").value);
+    assertEquals("0", byName.get("busy_timeout").value);
+    Assert.assertNull(byName.get("mmap_size").value);
+
+    Connection c = DriverManager.getConnection(url, info);
+    try {
+      Statement s = c.createStatement();
+      String[][] expected = { { "journal_mode", "wal" }, { "cache_size", "-4000" }, { "synchronous", "1" },
+          { "temp_store", "2" }, { "foreign_keys", "0" } };
+      for (String[] e : expected) {
+        ResultSet rs = s.executeQuery("PRAGMA " + e[0]);
+        Assert.assertTrue(rs.next());
+        assertEquals(e[0], e[1], rs.getString(1));
+        rs.close();
+      }
+      s.close();
+    } finally {
+      c.close();
+      new File("jdbctest-config.db").delete();
+    }
+
+    try {
+      DriverManager.getConnection("jdbc:sqlite:jdbctest.db?synchronous=sometimes");
+      Assert.fail("Invalid pragma value not reported");
+    } catch (SQLException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testMmap() throws SQLException
+  {
+    Statement s = conn.createStatement();
+    s.execute("CREATE TABLE MM(ID INTEGER PRIMARY KEY, V TEXT)");
+    s.execute("INSERT INTO MM(ID, V) VALUES(1, 'one')");
+    s.close();
+    SQLiteConnection c = conn.unwrap(SQLiteConnection.class);
+    long max = c.setMmapSize(SQLiteConnection.MMAP_MAX);
+    Assert.assertTrue(max > 0);
+    assertEquals(max, c.getMmapSize());
+    Assert.assertNull(c.getWarnings());
+    // Smaller than the database
+    assertEquals(1024, c.setMmapSize(1024));
+    Assert.assertNotNull(c.getWarnings());
+    c.clearWarnings();
+    assertEquals(0, c.setMmapSize(0));
+    try {
+      c.setMmapSize(-1);
+      Assert.fail("Negative mmap size not reported");
+    } catch (SQLException e) {
+      assertEquals(SQLite.SQLITE_MISUSE, e.getErrorCode());
+    }
+
+    Connection m = DriverManager.getConnection("jdbc:sqlite:jdbctest.db?mmap=true");
+    assertEquals(max, m.unwrap(SQLiteConnection.class).getMmapSize());
+    m.close();
+
+    // Pooled connections get their size back
+    SQLiteDataSource ds = new SQLiteDataSource();
+    ds.setDatabaseName("jdbctest.db");
+    ds.setMmapSize(1 << 20);
+    try {
+      ds.setPragma("mmap_size", "0");
+      Assert.fail("mmap_size pragma accepted");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    Connection p = ds.getConnection();
+    assertEquals(1 << 20, p.unwrap(SQLiteConnection.class).getMmapSize());
+    p.unwrap(SQLiteConnection.class).setMmapSize(0);
+    p.close();
+    p = ds.getConnection();
+    assertEquals(1 << 20, p.unwrap(SQLiteConnection.class).getMmapSize());
+    p.close();
+    ds.close();
+  }
+
+  @Test
+  public void testLazyBegin() throws SQLException
+  {
+    Statement s = conn.createStatement();
+    s.execute("CREATE TABLE LB(ID INTEGER NOT NULL)");
+    s.close();
+    Connection other = DriverManager.getConnection("jdbc:sqlite:jdbctest.db?transaction_mode=Immediate");
+    assertEquals(SQLiteConnection.TransactionMode.IMMEDIATE, other.unwrap(SQLiteConnection.class).getTransactionMode());
+    Statement os = other.createStatement();
+
+    SQLiteConnection c = conn.unwrap(SQLiteConnection.class);
+    c.setTransactionMode(SQLiteConnection.TransactionMode.IMMEDIATE);
+    conn.setAutoCommit(false);
+    Assert.assertFalse(conn.getAutoCommit());
+    // Nothing begun yet, so nothing is locked
+    os.execute("INSERT INTO LB(ID) VALUES(1)");
+    conn.commit();
+
+    s = conn.createStatement();
+    ResultSet rs = s.executeQuery("SELECT COUNT(*) FROM LB");
+    Assert.assertTrue(rs.next());
+    assertEquals(1, rs.getInt(1));
+    s.close();
+    // The read began an immediate transaction, which holds the write lock
+    try {
+      os.execute("INSERT INTO LB(ID) VALUES(2)");
+      Assert.fail("Write lock not taken by BEGIN IMMEDIATE");
+    } catch (SQLException e) {
+      assertEquals(SQLite.SQLITE_BUSY, e.getErrorCode());
+    }
+    conn.commit();
+    // Idle again after the commit
+    os.execute("INSERT INTO LB(ID) VALUES(2)");
+
+    s = conn.createStatement();
+    s.execute("INSERT INTO LB(ID) VALUES(3)");
+    conn.rollback();
+    rs = s.executeQuery("SELECT COUNT(*) FROM LB");
+    Assert.assertTrue(rs.next());
+    assertEquals(2, rs.getInt(1));
+    s.close();
+    conn.setAutoCommit(true);
+    Assert.assertTrue(conn.getAutoCommit());
+    os.execute("INSERT INTO LB(ID) VALUES(4)");
+    os.close();
+    other.close();
+  }
+
+  @Test
+  public void testSavepoints() throws SQLException
+  {
+    Statement s = conn.createStatement();
+    s.execute("CREATE TABLE SP(ID INTEGER PRIMARY KEY)");
+    try {
+      conn.setSavepoint();
+      Assert.fail("Savepoint in auto-commit mode not reported");
+    } catch (SQLException e) {
+      assertEquals(SQLite.SQLITE_MISUSE, e.getErrorCode());
+    }
+    Assert.assertTrue(conn.getMetaData().supportsSavepoints());
+
+    // One savepoint per record, a bad record is skipped without losing the others
+    conn.setAutoCommit(false);
+    PreparedStatement ps = conn.prepareStatement("INSERT INTO SP(ID) VALUES(?)");
+    int[] records = { 1, 2, 2, 3, 1, 4 };
+    for (int id : records) {
+      Savepoint sp = conn.setSavepoint();
+      try {
+        ps.setInt(1, id);
+        ps.executeUpdate();
+        conn.releaseSavepoint(sp);
+      } catch (SQLException e) {
+        conn.rollback(sp);
+        conn.releaseSavepoint(sp);
+      }
+    }
+    ps.close();
+
+    // Nested, named ones
+    Savepoint outer = conn.setSavepoint("outer \"one\"");
+    assertEquals("outer \"one\"", outer.getSavepointName());
+    s.execute("INSERT INTO SP(ID) VALUES(10)");
+    Savepoint inner = conn.setSavepoint();
+    Assert.assertTrue(inner.getSavepointId() > 0);
+    s.execute("INSERT INTO SP(ID) VALUES(11)");
+    conn.rollback(outer);
+    try {
+      conn.releaseSavepoint(inner);
+      Assert.fail("Savepoint after the one rolled back still valid");
+    } catch (SQLException e) {
+      assertEquals(SQLite.SQLITE_MISUSE, e.getErrorCode());
+    }
+    s.execute("INSERT INTO SP(ID) VALUES(12)");
+    conn.releaseSavepoint(outer);
+    conn.commit();
+    try {
+      conn.rollback(outer);
+      Assert.fail("Savepoint of a committed transaction still valid");
+    } catch (SQLException e) {
+      assertEquals(SQLite.SQLITE_MISUSE, e.getErrorCode());
+    }
+    conn.setAutoCommit(true);
+
+    ResultSet rs = s.executeQuery("SELECT GROUP_CONCAT(ID) FROM (SELECT ID FROM SP ORDER BY ID)");
+    Assert.assertTrue(rs.next());
+    assertEquals("1,2,3,4,12", rs.getString(1));
+    s.close();
+  }
+
+  @Test
+  public void testStatementTracking() throws Exception
+  {
+    Statement s = conn.createStatement();
+    s.execute("CREATE TABLE ST(ID INTEGER NOT NULL)");
+    s.execute("INSERT INTO ST(ID) VALUES(1)");
+    s.execute("INSERT INTO ST(ID) VALUES(2)");
+    s.close();
+
+    // Closing the connection finalizes the statements left open, so it really closes and gives up its read lock
+    Connection c = DriverManager.getConnection("jdbc:sqlite:jdbctest.db?statement_cache_size=4");
+    PreparedStatement cached = c.prepareStatement("SELECT ID FROM ST");
+    cached.close();
+    Statement reader = c.createStatement();
+    ResultSet rs = reader.executeQuery("SELECT ID FROM ST");
+    Assert.assertTrue(rs.next());
+    c.close();
+    s = conn.createStatement();
+    s.execute("INSERT INTO ST(ID) VALUES(3)");
+    s.close();
+
+    // A statement collected without close is reported, with where it was created
+    c = DriverManager.getConnection("jdbc:sqlite:jdbctest.db?leak_detection=true");
+    SQLiteConnection sc = c.unwrap(SQLiteConnection.class);
+    Assert.assertTrue(sc.isLeakDetection());
+    leakStatement(c);
+    for (int i = 0; i < 100 && sc.getLeakedStatementCount() == 0; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertEquals(1, sc.getLeakedStatementCount());
+    StackTraceElement[] trace = sc.getLeakedStatements().get(0).getStackTrace();
+    boolean found = false;
+    for (StackTraceElement e : trace) found |= e.getMethodName().equals("leakStatement");
+    Assert.assertTrue(found);
+    c.close();
+  }
+
+  private static void leakStatement(Connection c) throws SQLException
+  {
+    c.createStatement().executeQuery("SELECT ID FROM ST").next();
+  }
+
+  private static class PatternStream extends InputStream
+  {
+    private final long size;
+    private long position;
+
+    PatternStream(long size)
+    {
+      this.size = size;
+    }
+
+    static byte at(long i)
+    {
+      return (byte) (i * 31 + (i >> 8));
+    }
+
+    @Override
+    public int read()
+    {
+      return position < size ? at(position++) & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+    {
+      if (position >= size) return -1;
+      // Short reads, as a socket would deliver
+      int n = (int) Math.min(Math.min(len, 7000), size - position);
+      for (int i = 0; i < n; i++) b[off + i] = at(position++);
+      return n;
+    }
+  }
+
 }